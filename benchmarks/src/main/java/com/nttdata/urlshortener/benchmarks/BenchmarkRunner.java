@@ -0,0 +1,38 @@
+package com.nttdata.urlshortener.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+* This class runs all benchmarks once per thread count with the GC profiler,
+* so every result carries allocation rate (gc.alloc.rate.norm, bytes per operation).
+* Results are written to jmh-result-<threads>-threads.json.
+*
+* Usage: java -jar target/benchmarks.jar [threads, default 1,4,8] [benchmark regexp]
+* Plain JMH command line is still available as java -cp target/benchmarks.jar org.openjdk.jmh.Main
+*/
+public class BenchmarkRunner
+{
+	public static void main(String[] args) throws RunnerException
+	{
+		String threads = args.length > 0 ? args[0] : "1,4,8";
+		String include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark.*";
+
+		for (String count : threads.split(","))
+		{
+			int threadCount = Integer.parseInt(count.trim());
+			Options options = new OptionsBuilder()
+					.include(include)
+					.threads(threadCount)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result("jmh-result-" + threadCount + "-threads.json")
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
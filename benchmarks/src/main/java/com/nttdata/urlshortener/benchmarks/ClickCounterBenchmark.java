@@ -0,0 +1,94 @@
+package com.nttdata.urlshortener.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nttdata.urlshortener.clicks.ClickCounterStore;
+import com.nttdata.urlshortener.clicks.ClickJournal;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+/**
+* Benchmarks of the click registration done by LinkController on every redirect.
+* "spread" clicks many short URLs, "hot" makes all threads click the same one.
+* "journal" adds writing every click to a memory mapped journal in a temporary directory.
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClickCounterBenchmark
+{
+	// power of 2
+	private static final int KEYS = 1 << 14;
+
+	@Param({ "false", "true" })
+	private boolean journal;
+
+	private ClickCounterStore clickCounters;
+	private String[] keys;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		String directory = Files.createTempDirectory("click-journal").toString();
+		clickCounters = new ClickCounterStore(new ClickJournal(journal, directory, 1 << 26));
+		keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++)
+		{
+			keys[i] = UrlReducer.encode(1_000_000_000L + i);
+			clickCounters.increment(keys[i]);
+		}
+	}
+
+	// journal segments of the iteration are deleted, as by a flush
+	@TearDown(Level.Iteration)
+	public void flush()
+	{
+		clickCounters.drain();
+		clickCounters.commit();
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		// xorshift, distinct seed per thread
+		int seed = System.identityHashCode(this) | 1;
+
+		int next()
+		{
+			seed ^= seed << 13;
+			seed ^= seed >>> 17;
+			seed ^= seed << 5;
+			return seed & (KEYS - 1);
+		}
+	}
+
+	@Benchmark
+	public void spread(Cursor cursor)
+	{
+		clickCounters.increment(keys[cursor.next()]);
+	}
+
+	@Benchmark
+	public void hot()
+	{
+		clickCounters.increment(keys[0]);
+	}
+}
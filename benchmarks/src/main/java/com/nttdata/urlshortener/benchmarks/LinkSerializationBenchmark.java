@@ -0,0 +1,86 @@
+package com.nttdata.urlshortener.benchmarks;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nttdata.urlshortener.model.Link;
+
+/**
+* Benchmarks of Link conversions: JSON written by REST endpoints
+* and BSON documents read and written by the MongoDB repository.
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkSerializationBenchmark
+{
+	private ObjectMapper objectMapper;
+	private MappingMongoConverter converter;
+	private Link link;
+	private byte[] json;
+	private Document document;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		objectMapper = new ObjectMapper();
+		MongoMappingContext mappingContext = new MongoMappingContext();
+		mappingContext.afterPropertiesSet();
+		converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+		converter.afterPropertiesSet();
+
+		long now = System.currentTimeMillis();
+		link = new Link("5bdf1a2b3c4d5e6f7a8b9c0d", "bVx7dQa", "https://signup.com/login/signin?triggerUri=%2Fapi%2Forg_activities%2F1420396",
+				new Date(now), new Date(now + TimeUnit.DAYS.toMillis(365)), 111);
+		link.setLongUrlHash(-4242424242424242L);
+		json = objectMapper.writeValueAsBytes(link);
+		document = new Document();
+		converter.write(link, document);
+	}
+
+	@Benchmark
+	public byte[] toJson() throws IOException
+	{
+		return objectMapper.writeValueAsBytes(link);
+	}
+
+	@Benchmark
+	public Link fromJson() throws IOException
+	{
+		return objectMapper.readValue(json, Link.class);
+	}
+
+	@Benchmark
+	public Document toDocument()
+	{
+		Document target = new Document();
+		converter.write(link, target);
+		return target;
+	}
+
+	@Benchmark
+	public Link fromDocument()
+	{
+		return converter.read(Link.class, document);
+	}
+}
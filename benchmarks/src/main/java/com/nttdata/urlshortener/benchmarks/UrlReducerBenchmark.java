@@ -0,0 +1,113 @@
+package com.nttdata.urlshortener.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+/**
+* Benchmarks of key generation and URL handling done on every /create request.
+* Keys come from the in-memory sequence, DB key range leasing is not measured.
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlReducerBenchmark
+{
+	static final String[] URLS =
+	{ "http://www.geeksforgeeks.org/", "https://www.google.com/search?q=url+shortener&ie=UTF-8", "http://www.yahoo.com",
+			"https://www.amazon.com/page1.php", "https://signup.com/login/signin?triggerUri=%2Fapi%2Forg_activities%2F1420396",
+			"http://www.techcrunch.com/2018/11/05/some-long-article-title-with-many-words/", "https://en.wikipedia.org/wiki/Base62",
+			"http://www.icicibank.com/" };
+
+	private UrlReducer reducer;
+	// keys of a realistic length, 6 to 7 characters
+	private String[] keys;
+
+	@Setup
+	public void setup()
+	{
+		reducer = new UrlReducer("http://yz0101.com/");
+		keys = new String[URLS.length];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = UrlReducer.encode(1_000_000_000L * (i + 1));
+	}
+
+	/**
+	 * Per thread position in the inputs, so threads do not share a counter.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		int next;
+		char[] buffer = new char[UrlReducer.MAX_KEY_LENGTH];
+
+		int index()
+		{
+			return next++ & 7;
+		}
+	}
+
+	@Benchmark
+	public String reduceUrl(Cursor cursor)
+	{
+		return reducer.reduceUrl(URLS[cursor.index()]);
+	}
+
+	// canonicalUrl replaced cleanUrl, name kept to compare with earlier results
+	@Benchmark
+	public String cleanUrl(Cursor cursor)
+	{
+		return reducer.canonicalUrl(URLS[cursor.index()]);
+	}
+
+	@Benchmark
+	public long hashUrl(Cursor cursor)
+	{
+		return reducer.hashUrl(URLS[cursor.index()]);
+	}
+
+	@Benchmark
+	public boolean isUrlValid(Cursor cursor)
+	{
+		return reducer.isUrlValid(URLS[cursor.index()]);
+	}
+
+	@Benchmark
+	public String generateKey()
+	{
+		return reducer.generateKey();
+	}
+
+	@Benchmark
+	public String encode(Cursor cursor)
+	{
+		return UrlReducer.encode(1_000_000_000L + cursor.next++);
+	}
+
+	// allocation free variant used by generateKey
+	@Benchmark
+	public int encodeToBuffer(Cursor cursor)
+	{
+		return UrlReducer.encode(1_000_000_000L + cursor.next++, cursor.buffer);
+	}
+
+	@Benchmark
+	public long decode(Cursor cursor)
+	{
+		return UrlReducer.decode(keys[cursor.index()]);
+	}
+}
@@ -0,0 +1,191 @@
+package com.nttdata.urlshortener.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+* This class sends requests at a fixed arrival rate (open loop), whether or not
+* previous requests have completed. Latency is measured from the time a request
+* was due, so time spent queued behind slow requests is included
+* and a stalled server shows up in the percentiles (no coordinated omission).
+*/
+public class LoadDriver
+{
+	public enum Endpoint
+	{
+		REDIRECT, CREATE, STATS
+	}
+
+	private final String baseUrl;
+	private final List<String> keys;
+	private final ZipfianGenerator zipf;
+	// cumulative percentages of redirect, create
+	private final int redirectPercent;
+	private final int createPercent;
+	private final ExecutorService workers;
+	private final EndpointStats[] stats = new EndpointStats[Endpoint.values().length];
+	// unique suffix of long URLs created during the run
+	private final String runId = Long.toString(System.currentTimeMillis(), 36);
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong outstanding = new AtomicLong();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (baseUrl) (application URL, i.e. http://localhost:8080)
+	 * @param (keys) (seeded short URLs, index is the Zipf rank)
+	 * @param (exponent) (Zipf skew of short URLs requested)
+	 * @param (mix) (percentages of redirect, create and stats requests)
+	 * @param (threads) (max concurrent requests)
+	 */
+	public LoadDriver(String baseUrl, List<String> keys, double exponent, int[] mix, int threads)
+	{
+		this.baseUrl = baseUrl;
+		this.keys = keys;
+		this.zipf = new ZipfianGenerator(keys.size(), exponent);
+		this.redirectPercent = mix[0];
+		this.createPercent = mix[0] + mix[1];
+		this.workers = Executors.newFixedThreadPool(threads);
+		for (Endpoint endpoint : Endpoint.values())
+			stats[endpoint.ordinal()] = new EndpointStats();
+	}
+
+	/**
+	 * This method sends requests evenly spaced at given rate and waits for all of them.
+	 *
+	 * @param (ratePerSecond) (arrival rate)
+	 * @param (seconds) (duration)
+	 * @return (elapsedNanos) (time until the last response)
+	 */
+	public long run(double ratePerSecond, long seconds) throws InterruptedException
+	{
+		long start = System.nanoTime();
+		long requests = (long) (ratePerSecond * seconds);
+		for (long i = 0; i < requests; i++)
+		{
+			long due = start + (long) (i * 1e9 / ratePerSecond);
+			long wait = due - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+			outstanding.incrementAndGet();
+			workers.execute(() -> send(due));
+		}
+		while (outstanding.get() > 0)
+			Thread.sleep(10);
+		return System.nanoTime() - start;
+	}
+
+	public EndpointStats getStats(Endpoint endpoint)
+	{
+		return stats[endpoint.ordinal()];
+	}
+
+	/**
+	 * This method forgets everything recorded, i.e. during warm up.
+	 */
+	public void reset()
+	{
+		for (EndpointStats endpointStats : stats)
+			endpointStats.reset();
+	}
+
+	public void shutdown()
+	{
+		workers.shutdownNow();
+	}
+
+	private void send(long due)
+	{
+		int percent = ThreadLocalRandom.current().nextInt(100);
+		Endpoint endpoint = percent < redirectPercent ? Endpoint.REDIRECT : percent < createPercent ? Endpoint.CREATE : Endpoint.STATS;
+		boolean ok;
+		try
+		{
+			switch (endpoint)
+			{
+				case REDIRECT:
+					ok = get(baseUrl + "/longurl/" + keys.get(zipf.next())) == HttpURLConnection.HTTP_MOVED_TEMP;
+					break;
+				case CREATE:
+					String longUrl = "https://example.com/loadtest/" + runId + "/new/" + created.incrementAndGet();
+					ok = get(baseUrl + "/create?shortUrl=&days=30&longUrl=" + URLEncoder.encode(longUrl, "UTF-8")) == HttpURLConnection.HTTP_OK;
+					break;
+				default:
+					ok = get(baseUrl + "/stats/" + keys.get(zipf.next())) == HttpURLConnection.HTTP_OK;
+			}
+		}
+		catch (IOException e)
+		{
+			ok = false;
+		}
+		EndpointStats endpointStats = stats[endpoint.ordinal()];
+		endpointStats.latency.recordValue(Math.min(System.nanoTime() - due, EndpointStats.MAX_LATENCY));
+		if (!ok)
+			endpointStats.errors.increment();
+		outstanding.decrementAndGet();
+	}
+
+	/**
+	 * This method sends GET without following redirects and reads the body,
+	 * so the connection is kept alive for the next request.
+	 *
+	 * @param (url) (request URL)
+	 * @return (status) (HTTP status)
+	 */
+	static int get(String url) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setInstanceFollowRedirects(false);
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(30000);
+		int status = connection.getResponseCode();
+		InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		if (body != null)
+		{
+			byte[] buffer = new byte[4096];
+			while (body.read(buffer) >= 0)
+				;
+			body.close();
+		}
+		return status;
+	}
+
+	public static final class EndpointStats
+	{
+		static final long MAX_LATENCY = TimeUnit.MINUTES.toNanos(10);
+
+		// nanoseconds, 3 significant digits
+		final Histogram latency = new ConcurrentHistogram(MAX_LATENCY, 3);
+		final LongAdder errors = new LongAdder();
+
+		public Histogram getLatency()
+		{
+			return latency;
+		}
+
+		public long getErrors()
+		{
+			return errors.sum();
+		}
+
+		void reset()
+		{
+			latency.reset();
+			errors.reset();
+		}
+	}
+}
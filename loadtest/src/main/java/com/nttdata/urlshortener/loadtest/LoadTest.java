@@ -0,0 +1,264 @@
+package com.nttdata.urlshortener.loadtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.nttdata.urlshortener.UrlShortenerApplication;
+import com.nttdata.urlshortener.loadtest.LoadDriver.Endpoint;
+import com.nttdata.urlshortener.loadtest.LoadDriver.EndpointStats;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+/**
+* This class runs an end-to-end load test of one application node.
+* Unless --target is given, the application is started in this JVM against
+* an embedded MongoDB (or --mongo), N links are seeded through /create/batch,
+* then redirect, create and stats requests are sent at a fixed rate.
+* Latency percentiles and throughput per endpoint are written to a JSON report,
+* full distributions to <report>-<endpoint>.hgrm files, so runs can be compared.
+*
+* Options, --name=value:
+* links (100000), rate (requests per second, 1000), duration (seconds, 60), warmup (seconds, 10),
+* zipf (skew of short URLs requested, 0.99), mix (redirect,create,stats percent, 90,5,5),
+* threads (max concurrent requests, 64), flush-interval-ms (click flush, 10000),
+* profile (i.e. reactive), target (URL of a running node), mongo (MongoDB URI),
+* report (loadtest-report.json)
+*/
+public class LoadTest
+{
+	private static final int SEED_BATCH = 1000;
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, String> options = defaults();
+		for (String arg : args)
+		{
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0)
+				throw new IllegalArgumentException("Expected --name=value, got " + arg);
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		// one pooled connection per request thread
+		System.setProperty("http.maxConnections", options.get("threads"));
+
+		MongodExecutable mongod = null;
+		ConfigurableApplicationContext context = null;
+		String baseUrl = options.get("target");
+		try
+		{
+			if (baseUrl == null)
+			{
+				String mongoUri = options.get("mongo");
+				if (mongoUri == null)
+				{
+					int port = Network.getFreeServerPort();
+					mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+							.version(Version.Main.PRODUCTION)
+							.net(new Net("localhost", port, Network.localhostIsIPv6()))
+							.build());
+					mongod.start();
+					mongoUri = "mongodb://localhost:" + port + "/loadtest";
+				}
+				context = startApplication(mongoUri, options);
+				baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+			}
+
+			int links = Integer.parseInt(options.get("links"));
+			System.out.println("Seeding " + links + " links");
+			List<String> keys = seed(baseUrl, links);
+			// popularity must not follow creation order
+			Collections.shuffle(keys, new Random(42));
+
+			int[] mix = new int[3];
+			String[] percents = options.get("mix").split(",");
+			for (int i = 0; i < mix.length; i++)
+				mix[i] = Integer.parseInt(percents[i].trim());
+			LoadDriver driver = new LoadDriver(baseUrl, keys, Double.parseDouble(options.get("zipf")), mix, Integer.parseInt(options.get("threads")));
+			double rate = Double.parseDouble(options.get("rate"));
+			try
+			{
+				System.out.println("Warming up");
+				driver.run(rate, Long.parseLong(options.get("warmup")));
+				driver.reset();
+				System.out.println("Measuring");
+				long elapsedNanos = driver.run(rate, Long.parseLong(options.get("duration")));
+				report(driver, options, elapsedNanos);
+			}
+			finally
+			{
+				driver.shutdown();
+			}
+		}
+		finally
+		{
+			if (context != null)
+				context.close();
+			if (mongod != null)
+				mongod.stop();
+		}
+	}
+
+	private static Map<String, String> defaults()
+	{
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		options.put("links", "100000");
+		options.put("rate", "1000");
+		options.put("duration", "60");
+		options.put("warmup", "10");
+		options.put("zipf", "0.99");
+		options.put("mix", "90,5,5");
+		options.put("threads", "64");
+		options.put("flush-interval-ms", "10000");
+		options.put("report", "loadtest-report.json");
+		return options;
+	}
+
+	private static ConfigurableApplicationContext startApplication(String mongoUri, Map<String, String> options)
+	{
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("server.port", "0");
+		properties.put("spring.data.mongodb.uri", mongoUri);
+		// MongoDB is started above, not by Spring Boot
+		properties.put("spring.autoconfigure.exclude", "org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration");
+		// make click flushes happen during the measurement
+		properties.put("urlshortener.clicks.flush-interval-ms", options.get("flush-interval-ms"));
+		// all requests come from one client, budgets are for production traffic
+		properties.put("urlshortener.admission.enabled", "false");
+		properties.put("logging.level.root", "warn");
+		SpringApplicationBuilder builder = new SpringApplicationBuilder(UrlShortenerApplication.class).properties(properties);
+		if (options.containsKey("profile"))
+			builder.profiles(options.get("profile"));
+		return builder.run();
+	}
+
+	/**
+	 * This method creates links through /create/batch, or one by one through /create
+	 * when batch import is not served (reactive mode).
+	 *
+	 * @return (keys) (short URLs created)
+	 */
+	private static List<String> seed(String baseUrl, int links) throws IOException
+	{
+		String prefix = "https://example.com/loadtest/" + Long.toString(System.currentTimeMillis(), 36) + "/";
+		List<String> keys = new ArrayList<String>(links);
+		for (int from = 0; from < links; from += SEED_BATCH)
+		{
+			HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/create/batch?format=ndjson&days=30").openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-ndjson");
+			// batch is small, response fits socket buffers while request is being written
+			try (OutputStream out = connection.getOutputStream(); PrintStream body = new PrintStream(out, false, "UTF-8"))
+			{
+				for (int i = from; i < Math.min(from + SEED_BATCH, links); i++)
+					body.print("\"" + prefix + i + "\"\n");
+			}
+			if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND && from == 0)
+				return seedOneByOne(baseUrl, prefix, links);
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					String shortUrl = MAPPER.readTree(line).path("shortUrl").asText();
+					if (!shortUrl.isEmpty())
+						keys.add(shortUrl.substring(shortUrl.lastIndexOf('/') + 1));
+				}
+			}
+		}
+		return keys;
+	}
+
+	private static List<String> seedOneByOne(String baseUrl, String prefix, int links)
+	{
+		return IntStream.range(0, links).parallel().mapToObj(i ->
+		{
+			try
+			{
+				HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/create?shortUrl=&days=30&longUrl=" + URLEncoder.encode(prefix + i, "UTF-8")).openConnection();
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)))
+				{
+					String shortUrl = reader.readLine();
+					return shortUrl.substring(shortUrl.lastIndexOf('/') + 1);
+				}
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}).collect(Collectors.toCollection(ArrayList::new));
+	}
+
+	private static void report(LoadDriver driver, Map<String, String> options, long elapsedNanos) throws IOException
+	{
+		String reportFile = options.get("report");
+		String base = reportFile.endsWith(".json") ? reportFile.substring(0, reportFile.length() - 5) : reportFile;
+		double seconds = elapsedNanos / 1e9;
+
+		Map<String, Object> report = new LinkedHashMap<String, Object>();
+		report.put("timestamp", new java.util.Date().toString());
+		report.put("options", options);
+		report.put("elapsedSeconds", seconds);
+		Map<String, Object> endpoints = new LinkedHashMap<String, Object>();
+		for (Endpoint endpoint : Endpoint.values())
+		{
+			EndpointStats stats = driver.getStats(endpoint);
+			Histogram latency = stats.getLatency();
+			Map<String, Object> result = new LinkedHashMap<String, Object>();
+			result.put("requests", latency.getTotalCount());
+			result.put("errors", stats.getErrors());
+			result.put("throughputPerSecond", latency.getTotalCount() / seconds);
+			Map<String, Object> millis = new LinkedHashMap<String, Object>();
+			millis.put("mean", latency.getMean() / 1e6);
+			millis.put("p50", latency.getValueAtPercentile(50) / 1e6);
+			millis.put("p90", latency.getValueAtPercentile(90) / 1e6);
+			millis.put("p99", latency.getValueAtPercentile(99) / 1e6);
+			millis.put("p99.9", latency.getValueAtPercentile(99.9) / 1e6);
+			millis.put("max", latency.getMaxValue() / 1e6);
+			result.put("latencyMillis", millis);
+			endpoints.put(endpoint.name().toLowerCase(), result);
+
+			// HdrHistogram percentile format, can be plotted and compared across runs
+			try (PrintStream out = new PrintStream(new File(base + "-" + endpoint.name().toLowerCase() + ".hgrm"), "UTF-8"))
+			{
+				latency.outputPercentileDistribution(out, 1e6);
+			}
+			System.out.println(String.format("%-8s %8d req %6d err %9.1f req/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms", endpoint, latency.getTotalCount(),
+					stats.getErrors(), latency.getTotalCount() / seconds, millis.get("p50"), millis.get("p99"), millis.get("max")));
+		}
+		report.put("endpoints", endpoints);
+		MAPPER.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(reportFile), report);
+		System.out.println("Report written to " + reportFile + " (" + TimeUnit.NANOSECONDS.toSeconds(elapsedNanos) + " s measured)");
+	}
+}
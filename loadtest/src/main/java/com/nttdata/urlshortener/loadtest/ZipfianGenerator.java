@@ -0,0 +1,44 @@
+package com.nttdata.urlshortener.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+* This class draws item ranks 0..n-1 with Zipf distribution,
+* rank k is drawn with probability proportional to 1 / (k + 1)^exponent.
+* Exponent 0 is uniform, around 1 a few short URLs get most of the clicks.
+* Cumulative distribution is precomputed, next is a binary search; thread safe.
+*/
+public class ZipfianGenerator
+{
+	private final double[] cumulative;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (n) (number of items)
+	 * @param (exponent) (skew, >= 0)
+	 */
+	public ZipfianGenerator(int n, double exponent)
+	{
+		cumulative = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++)
+		{
+			sum += 1 / Math.pow(k + 1, exponent);
+			cumulative[k] = sum;
+		}
+		for (int k = 0; k < n; k++)
+			cumulative[k] /= sum;
+	}
+
+	/**
+	 * @return (rank) (0 is the most popular item)
+	 */
+	public int next()
+	{
+		int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+		// not found returns -(insertion point) - 1
+		return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+	}
+}
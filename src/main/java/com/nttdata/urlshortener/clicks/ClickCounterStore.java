@@ -0,0 +1,300 @@
+package com.nttdata.urlshortener.clicks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+* This class accumulates clicks of short URLs in memory until they are stored to DB.
+* Every short URL has its own LongAdder, so redirect threads never share a lock.
+* Draining swaps the whole generation of counters atomically and waits for threads
+* still incrementing the drained one, which takes nanoseconds.
+* Every generation journals its clicks to its own log (see ClickJournal); the log is
+* deleted once the flush of its generation is committed, clicks of a crashed run
+* are replayed into the first generation.
+* Pending clicks are those of the active generation plus those of drained generations
+* not settled yet (stored to DB or added back), so stats do not dip during a flush.
+*/
+@Component
+public class ClickCounterStore implements MeterBinder
+{
+	private final ClickJournal journal;
+	// counters currently incremented by redirect threads
+	private final AtomicReference<Generation> active = new AtomicReference<Generation>();
+	// drained generations whose logs are not deleted yet, replaced on every change under this
+	private volatile List<Generation> drained = Collections.emptyList();
+	// number of pending short URLs that triggers capacityListener
+	private volatile int capacity = Integer.MAX_VALUE;
+	private volatile Runnable capacityListener;
+	// time of the first click not drained yet, 0 if there is none
+	private final AtomicLong firstPending = new AtomicLong();
+
+	/**
+	 * Class constructor, clicks journaled by the previous run are counted again.
+	 *
+	 * @param (journal) (click journal)
+	 */
+	public ClickCounterStore(ClickJournal journal)
+	{
+		this.journal = journal;
+		Map<String, Long> recovered = new HashMap<String, Long>();
+		Generation first = new Generation(journal.recover((shortUrl, clicks) -> recovered.merge(shortUrl, clicks, Long::sum)));
+		for (Map.Entry<String, Long> entry : recovered.entrySet())
+			first.counters.computeIfAbsent(entry.getKey(), key -> new LongAdder()).add(entry.getValue());
+		if (!recovered.isEmpty())
+			firstPending.set(System.currentTimeMillis());
+		active.set(first);
+	}
+
+	/**
+	 * This method registers one click of short URL.
+	 *
+	 * @param (shortUrl) (short URL clicked)
+	 */
+	public void increment(String shortUrl)
+	{
+		add(shortUrl, 1);
+	}
+
+	/**
+	 * This method adds any number of clicks, i.e. clicks returned after failed store.
+	 *
+	 * @param (shortUrl) (short URL clicked)
+	 * @param (clicks) (number of clicks)
+	 */
+	public void add(String shortUrl, long clicks)
+	{
+		Generation generation = enter();
+		boolean full = false;
+		try
+		{
+			generation.log.append(shortUrl, clicks);
+			LongAdder counter = generation.counters.get(shortUrl);
+			if (counter == null)
+			{
+				counter = generation.counters.computeIfAbsent(shortUrl, key -> new LongAdder());
+				// only new short URLs may fill the store up
+				full = generation.counters.size() >= capacity;
+			}
+			counter.add(clicks);
+		}
+		finally
+		{
+			generation.writers.decrement();
+		}
+		// listener may drain, which waits for writers
+		if (full && capacityListener != null)
+			capacityListener.run();
+		// plain read on every click, write once per drain
+		if (firstPending.get() == 0)
+			firstPending.compareAndSet(0, System.currentTimeMillis());
+	}
+
+	/**
+	 * @return (generation) (active generation, registered as written until writers is decremented)
+	 */
+	private Generation enter()
+	{
+		while (true)
+		{
+			Generation generation = active.get();
+			generation.writers.increment();
+			// drain swapped it meanwhile and may be waiting for writers already
+			if (active.get() == generation)
+				return generation;
+			generation.writers.decrement();
+		}
+	}
+
+	/**
+	 * This method registers a callback fired when too many short URLs are pending.
+	 * Callback runs on redirect thread, so it must return immediately.
+	 *
+	 * @param (capacity) (number of pending short URLs)
+	 * @param (capacityListener) (callback)
+	 */
+	public void onCapacity(int capacity, Runnable capacityListener)
+	{
+		this.capacity = capacity;
+		this.capacityListener = capacityListener;
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (clicks) (number of clicks not stored to DB yet)
+	 */
+	public long pending(String shortUrl)
+	{
+		long clicks = 0;
+		for (Generation generation : generations())
+		{
+			LongAdder counter = generation.counters.get(shortUrl);
+			if (counter != null)
+				clicks += counter.sum();
+		}
+		return clicks;
+	}
+
+	/**
+	 * @return (generations) (active generation and drained ones not committed yet, each once)
+	 */
+	private List<Generation> generations()
+	{
+		// active first, a drained generation is listed before it stops being active
+		Generation current = active.get();
+		List<Generation> generations = new ArrayList<Generation>(drained.size() + 1);
+		generations.add(current);
+		for (Generation generation : drained)
+			if (generation != current)
+				generations.add(generation);
+		return generations;
+	}
+
+	/**
+	 * @return (number of short URLs with clicks not stored to DB yet)
+	 */
+	public int pendingKeys()
+	{
+		return active.get().counters.size();
+	}
+
+	/**
+	 * This method copies all counters, it is meant for background tasks, not for redirect path.
+	 *
+	 * @return (clicks) (short URL - clicks not drained yet)
+	 */
+	public Map<String, Long> pendingCounts()
+	{
+		Map<String, Long> clicks = new HashMap<String, Long>();
+		for (Generation generation : generations())
+			for (Map.Entry<String, LongAdder> entry : generation.counters.entrySet())
+			{
+				long sum = entry.getValue().sum();
+				if (sum != 0)
+					clicks.merge(entry.getKey(), sum, Long::sum);
+			}
+		return clicks;
+	}
+
+	/**
+	 * This method sums all counters, it is meant for monitoring, not for redirect path.
+	 *
+	 * @return (clicks) (number of clicks not stored to DB yet)
+	 */
+	public long pendingClicks()
+	{
+		long clicks = 0;
+		for (Generation generation : generations())
+			for (LongAdder counter : generation.counters.values())
+				clicks += counter.sum();
+		return clicks;
+	}
+
+	/**
+	 * @return (age) (milliseconds since the oldest click not stored to DB, 0 if there is none)
+	 */
+	public long oldestPendingAge()
+	{
+		long first = firstPending.get();
+		return first == 0 ? 0 : System.currentTimeMillis() - first;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		Gauge.builder("urlshortener.clicks.pending", this, ClickCounterStore::pendingClicks)
+				.description("Clicks counted in memory, not stored to DB yet")
+				.register(registry);
+		Gauge.builder("urlshortener.clicks.pending.urls", this, ClickCounterStore::pendingKeys)
+				.description("Short URLs with clicks not stored to DB yet")
+				.register(registry);
+		TimeGauge.builder("urlshortener.clicks.oldest.age", this, TimeUnit.MILLISECONDS, ClickCounterStore::oldestPendingAge)
+				.description("Age of the oldest click not stored to DB")
+				.register(registry);
+	}
+
+	/**
+	 * This method takes all accumulated clicks out of the store.
+	 * Redirect threads switch to a new generation at once, clicks registered
+	 * during the drain are returned by the next one. Drained clicks stay pending
+	 * until settled, and the drain must be followed by commit once they are.
+	 *
+	 * @return (clicks) (short URL - clicks map)
+	 */
+	public synchronized Map<String, Long> drain()
+	{
+		// clicks coming during the drain start a new age
+		firstPending.set(0);
+		Generation generation = active.get();
+		// listed before the swap, so readers never miss it
+		List<Generation> generations = new ArrayList<Generation>(drained);
+		generations.add(generation);
+		drained = generations;
+		active.set(new Generation(journal.newLog()));
+		// threads that entered the drained generation only increment a counter and write one record
+		while (generation.writers.sum() != 0)
+			Thread.yield();
+		Map<String, Long> clicks = new HashMap<String, Long>(generation.counters.size() * 4 / 3 + 1);
+		for (Map.Entry<String, LongAdder> entry : generation.counters.entrySet())
+		{
+			long sum = entry.getValue().sum();
+			if (sum != 0)
+				clicks.put(entry.getKey(), sum);
+		}
+		return clicks;
+	}
+
+	/**
+	 * This method stops counting drained clicks of short URLs as pending,
+	 * they are stored to DB now or returned by add.
+	 *
+	 * @param (shortUrls) (short URLs of the last drain)
+	 */
+	public void settled(Iterable<String> shortUrls)
+	{
+		List<Generation> generations = drained;
+		if (generations.isEmpty())
+			return;
+		Generation last = generations.get(generations.size() - 1);
+		for (String shortUrl : shortUrls)
+			last.counters.remove(shortUrl);
+	}
+
+	/**
+	 * This method deletes journals of drained clicks, they are stored to DB now
+	 * or returned by add, which journaled them again.
+	 */
+	public synchronized void commit()
+	{
+		for (Generation generation : drained)
+			journal.delete(generation.log);
+		drained = Collections.emptyList();
+	}
+
+	private static final class Generation
+	{
+		final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+		// threads between enter and the end of add
+		final LongAdder writers = new LongAdder();
+		final ClickJournal.Log log;
+
+		Generation(ClickJournal.Log log)
+		{
+			this.log = log;
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package com.nttdata.urlshortener.clicks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BulkWriteError;
+import com.nttdata.urlshortener.clicks.ClickTimeSeries.Series;
+import com.nttdata.urlshortener.model.ClickBucket;
+import com.nttdata.urlshortener.model.Link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+* This class stores clicks acquired in memory to DB.
+* Clicks are sent as unordered bulk $inc updates, so one flush costs
+* one round trip per chunk instead of read and save per short URL.
+* Clicks per minute are stored the same way as upserts of pre-aggregated
+* click buckets, one per short URL and bucket document of each granularity.
+* Flush runs on timer, when too many short URLs are pending, and on shutdown.
+*/
+@Component
+public class ClickFlusher implements MeterBinder
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	@Autowired
+	private ClickCounterStore clickCounters;
+	@Autowired
+	private ClickTimeSeries clickSeries;
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private ThreadPoolTaskExecutor clickFlushExecutor;
+	@Autowired
+	private PendingClicksExchange pendingClicks;
+	// max number of updates in one bulk request
+	@Value("${urlshortener.clicks.flush-chunk-size:1000}")
+	private int chunkSize;
+	// number of pending short URLs which triggers flush before timer
+	@Value("${urlshortener.clicks.flush-capacity:50000}")
+	private int capacity;
+	// guards against queuing flushes while one is running
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	// results of the last flush
+	private volatile long lastFlushMillis;
+	private volatile int lastFlushKeys;
+	// bucket updates failed by the last flush, retried by the next one
+	private List<BucketUpdate> failedBuckets = new ArrayList<BucketUpdate>();
+	// duration of every flush, null until bound to a registry
+	private volatile Timer flushTimer;
+
+	@PostConstruct
+	private void init()
+	{
+		clickCounters.onCapacity(capacity, this::requestFlush);
+	}
+
+	// This scheduled task will read acquired in memory clicks
+	// and store them into DB once in 30 min by default
+	@Scheduled(fixedRateString = "${urlshortener.clicks.flush-interval-ms:1800000}", initialDelayString = "${urlshortener.clicks.flush-interval-ms:1800000}")
+	public void scheduledFlush()
+	{
+		requestFlush();
+	}
+
+	/**
+	 * This method hands flush over to flush executor.
+	 * It returns immediately, if flush is already queued or running it does nothing.
+	 */
+	public void requestFlush()
+	{
+		if (!scheduled.compareAndSet(false, true))
+			return;
+		try
+		{
+			clickFlushExecutor.execute(() ->
+			{
+				try
+				{
+					flush();
+				}
+				finally
+				{
+					scheduled.set(false);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			scheduled.set(false);
+			log.error(e.getMessage());
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		flushTimer = Timer.builder("urlshortener.clicks.flush")
+				.description("Duration of storing in-memory clicks to DB")
+				.publishPercentileHistogram()
+				.register(registry);
+	}
+
+	@PreDestroy
+	private void shutdown()
+	{
+		// store whatever is left before application stops
+		flush();
+		storeSeries(true);
+	}
+
+	/**
+	 * This method drains click counters and stores them as bulk $inc updates.
+	 * Clicks of failed updates are returned to counters for the next flush.
+	 *
+	 * @return (keys) (number of short URLs written)
+	 */
+	public synchronized int flush()
+	{
+		long start = System.nanoTime();
+		long totalClicks = 0;
+		int keys = 0;
+		Map<String, Long> clicks = clickCounters.drain();
+		List<Map.Entry<String, Long>> chunk = new ArrayList<Map.Entry<String, Long>>(Math.min(chunkSize, clicks.size()));
+
+		for (Map.Entry<String, Long> entry : clicks.entrySet())
+		{
+			chunk.add(entry);
+			if (chunk.size() == chunkSize)
+			{
+				keys += storeChunk(chunk);
+				chunk.clear();
+			}
+			totalClicks += entry.getValue();
+		}
+		if (!chunk.isEmpty())
+			keys += storeChunk(chunk);
+
+		long elapsed = System.nanoTime() - start;
+		lastFlushMillis = elapsed / 1000000;
+		Timer timer = flushTimer;
+		if (timer != null)
+			timer.record(elapsed, TimeUnit.NANOSECONDS);
+		lastFlushKeys = keys;
+		if (!clicks.isEmpty())
+			log.info(String.format("%d clicks for %d short URLs stored to DB in %d ms.", totalClicks, keys, lastFlushMillis));
+
+		// failed clicks are back in counters and journaled again
+		clickCounters.commit();
+		// other nodes stop adding stored clicks to their stats
+		pendingClicks.publish();
+		storeSeries(false);
+		return keys;
+	}
+
+	/**
+	 * This method stores clicks per minute as $inc upserts of click buckets,
+	 * one update per short URL and bucket document of each granularity.
+	 *
+	 * @param (all) (true to store the current minute as well)
+	 */
+	private synchronized void storeSeries(boolean all)
+	{
+		List<BucketUpdate> updates = failedBuckets;
+		failedBuckets = new ArrayList<BucketUpdate>();
+		for (Map.Entry<String, Series> entry : clickSeries.drain(all).entrySet())
+		{
+			Series series = entry.getValue();
+			for (Granularity granularity : Granularity.values())
+			{
+				BucketUpdate update = null;
+				for (int i = 0; i < series.size(); i++)
+				{
+					long time = series.time(i);
+					long start = granularity.documentStart(time);
+					// minutes are ordered, a new document starts a new update
+					if (update == null || update.start != start)
+					{
+						update = new BucketUpdate(entry.getKey(), granularity, start);
+						updates.add(update);
+					}
+					update.counts.merge(Integer.toString(granularity.offset(time)), series.clicks(i), Long::sum);
+				}
+			}
+		}
+
+		for (int from = 0; from < updates.size(); from += chunkSize)
+			storeBuckets(updates.subList(from, Math.min(from + chunkSize, updates.size())));
+	}
+
+	private void storeBuckets(List<BucketUpdate> chunk)
+	{
+		BulkOperations operations = mongoTemplate.bulkOps(BulkMode.UNORDERED, ClickBucket.class);
+		for (BucketUpdate bucket : chunk)
+		{
+			Update update = new Update();
+			long total = 0;
+			for (Map.Entry<String, Long> count : bucket.counts.entrySet())
+			{
+				update.inc("counts." + count.getKey(), count.getValue());
+				total += count.getValue();
+			}
+			update.inc("total", total);
+			operations.upsert(new Query(Criteria.where("shortUrl").is(bucket.shortUrl)
+					.and("granularity").is(bucket.granularity.name())
+					.and("start").is(new Date(bucket.start))), update);
+		}
+
+		try
+		{
+			operations.execute();
+		}
+		catch (BulkOperationException e)
+		{
+			// concurrent upserts of a new document from two nodes fail once, retry finds it
+			for (BulkWriteError error : e.getErrors())
+				failedBuckets.add(chunk.get(error.getIndex()));
+			log.error(e.getMessage());
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+			failedBuckets.addAll(chunk);
+		}
+	}
+
+	private int storeChunk(List<Map.Entry<String, Long>> chunk)
+	{
+		BulkOperations operations = mongoTemplate.bulkOps(BulkMode.UNORDERED, Link.class);
+		for (Map.Entry<String, Long> entry : chunk)
+		{
+			long clicks = entry.getValue();
+			// keep int type of the field unless it does not fit
+			Number increment = clicks > Integer.MAX_VALUE ? (Number) clicks : (Number) (int) clicks;
+			operations.updateOne(new Query(Criteria.where("shortUrl").is(entry.getKey())), new Update().inc("clicks", increment));
+		}
+
+		try
+		{
+			operations.execute();
+			return chunk.size();
+		}
+		catch (BulkOperationException e)
+		{
+			// unordered bulk applies everything except reported errors
+			for (BulkWriteError error : e.getErrors())
+			{
+				Map.Entry<String, Long> entry = chunk.get(error.getIndex());
+				clickCounters.add(entry.getKey(), entry.getValue());
+				log.error(error.getMessage());
+			}
+			return chunk.size() - e.getErrors().size();
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+			for (Map.Entry<String, Long> entry : chunk)
+				clickCounters.add(entry.getKey(), entry.getValue());
+			return 0;
+		}
+		finally
+		{
+			// stored or pending again, no longer pending as drained clicks
+			List<String> shortUrls = new ArrayList<String>(chunk.size());
+			for (Map.Entry<String, Long> entry : chunk)
+				shortUrls.add(entry.getKey());
+			clickCounters.settled(shortUrls);
+		}
+	}
+
+	private static final class BucketUpdate
+	{
+		final String shortUrl;
+		final Granularity granularity;
+		final long start;
+		// offset - clicks
+		final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+
+		BucketUpdate(String shortUrl, Granularity granularity, long start)
+		{
+			this.shortUrl = shortUrl;
+			this.granularity = granularity;
+			this.start = start;
+		}
+	}
+
+	public long getLastFlushMillis()
+	{
+		return lastFlushMillis;
+	}
+
+	public int getLastFlushKeys()
+	{
+		return lastFlushKeys;
+	}
+}
@@ -0,0 +1,397 @@
+package com.nttdata.urlshortener.clicks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+* This class writes clicks to local append-only journal files, so clicks counted in memory
+* survive a crash until they are stored to DB. Every generation of click counters
+* (see ClickCounterStore) has its own log, a chain of memory mapped segment files;
+* the log is deleted once its clicks are stored, logs left by a crash are replayed on startup.
+* A click is one fixed size 32 byte record written straight into the mapping, no allocation,
+* no lock; short URLs longer than 24 bytes take continuation records.
+* Records reach the page cache immediately, so they survive a process crash;
+* they are forced to disk for all threads at once every commit interval, on a thread
+* of their own (journalScheduler), so long running scheduled tasks never delay it.
+*/
+@Component
+public class ClickJournal
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final int RECORD = 32;
+	private static final byte CLICKS = 1;
+	private static final byte CONTINUATION = 2;
+	// short URL bytes in the first record and in continuation records
+	private static final int FIRST_BYTES = RECORD - 8;
+	private static final int NEXT_BYTES = RECORD - 2;
+	private static final String PREFIX = "clicks-";
+	private static final String SUFFIX = ".journal";
+
+	private final boolean enabled;
+	private final File directory;
+	private final int segmentBytes;
+	// segments written since start, forced by commit
+	private final Set<Segment> open = ConcurrentHashMap.newKeySet();
+	// number of the next segment file
+	private final AtomicLong sequence = new AtomicLong();
+	@Autowired
+	private ThreadPoolTaskScheduler journalScheduler;
+	@Value("${urlshortener.journal.commit-interval-ms:200}")
+	private long commitInterval;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (enabled) (false keeps clicks in memory only)
+	 * @param (directory) (directory of journal files, local to the node)
+	 * @param (segmentBytes) (size of one segment file, rounded to whole records)
+	 */
+	public ClickJournal(@Value("${urlshortener.journal.enabled:true}") boolean enabled,
+			@Value("${urlshortener.journal.directory:journal}") String directory,
+			@Value("${urlshortener.journal.segment-bytes:33554432}") int segmentBytes)
+	{
+		this.enabled = enabled;
+		this.directory = new File(directory);
+		this.segmentBytes = Math.max(RECORD, segmentBytes / RECORD * RECORD);
+	}
+
+	/**
+	 * @return (log) (empty log for a new generation of click counters)
+	 */
+	public Log newLog()
+	{
+		return new Log(new ArrayList<Segment>());
+	}
+
+	/**
+	 * This method replays logs left by the previous run, their clicks were never stored to DB.
+	 * Replayed segments are adopted by the returned log, so they are deleted only once
+	 * the replayed clicks are stored.
+	 *
+	 * @param (clicks) (consumer of short URL and clicks of every record)
+	 * @return (log) (log for the first generation of click counters)
+	 */
+	public Log recover(ObjLongConsumer<String> clicks)
+	{
+		List<Segment> recovered = new ArrayList<Segment>();
+		if (!enabled)
+			return new Log(recovered);
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		if (files == null)
+			return new Log(recovered);
+		Arrays.sort(files);
+		long records = 0;
+		for (File file : files)
+		{
+			try
+			{
+				Segment segment = map(file, (int) file.length());
+				// recovered segments are never appended to
+				segment.position.set(segment.capacity);
+				records += replay(segment.buffer, segment.capacity, clicks);
+				recovered.add(segment);
+				String name = file.getName();
+				sequence.set(Math.max(sequence.get(), Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16) + 1));
+			}
+			catch (Exception e)
+			{
+				log.error(e.getMessage());
+			}
+		}
+		if (records > 0)
+			log.info(String.format("%d click records replayed from %d journal files.", records, recovered.size()));
+		return new Log(recovered);
+	}
+
+	@PostConstruct
+	private void start()
+	{
+		if (enabled)
+			journalScheduler.scheduleWithFixedDelay(this::commit, commitInterval);
+	}
+
+	/**
+	 * This method forces all records written since the last commit to disk.
+	 */
+	public void commit()
+	{
+		for (Segment segment : open)
+		{
+			long position = Math.min(segment.position.get(), segment.capacity);
+			if (position > segment.forced)
+			{
+				segment.buffer.force();
+				segment.forced = position;
+			}
+		}
+	}
+
+	/**
+	 * This method deletes files of a log whose clicks are stored to DB.
+	 *
+	 * @param (sealed) (log no longer appended to)
+	 */
+	public void delete(Log sealed)
+	{
+		for (Segment segment : sealed.segments)
+		{
+			open.remove(segment);
+			// mapping is released by GC, the file can be unlinked meanwhile
+			try
+			{
+				Files.deleteIfExists(segment.file.toPath());
+			}
+			catch (IOException e)
+			{
+				log.error(e.getMessage());
+			}
+		}
+	}
+
+	private Segment create()
+	{
+		File file = new File(directory, String.format("%s%016x%s", PREFIX, sequence.getAndIncrement(), SUFFIX));
+		try
+		{
+			Files.createDirectories(directory.toPath());
+			Segment segment = map(file, segmentBytes);
+			open.add(segment);
+			return segment;
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Click journal segment cannot be created: " + e.getMessage(), e);
+		}
+	}
+
+	private static Segment map(File file, int size) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			// new file is sparse, unwritten records read as zeros
+			if (raf.length() < size)
+				raf.setLength(size);
+			// mapping stays valid after the channel is closed
+			return new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+		}
+	}
+
+	/**
+	 * This method reads all valid click records of a segment. Records are read up to the end,
+	 * a record reserved but not written before a crash is left as a zero hole.
+	 *
+	 * @return (records) (number of valid records)
+	 */
+	private static long replay(MappedByteBuffer buffer, int capacity, ObjLongConsumer<String> clicks)
+	{
+		long records = 0;
+		for (int offset = 0; offset + RECORD <= capacity; offset += RECORD)
+		{
+			if (buffer.get(offset) != CLICKS || buffer.get(offset + 1) != checksum(buffer, offset))
+				continue;
+			int length = buffer.getShort(offset + 6) & 0xFFFF;
+			int size = recordsOf(length) * RECORD;
+			if (offset + size > capacity)
+				continue;
+			boolean valid = true;
+			for (int next = offset + RECORD; next < offset + size; next += RECORD)
+				valid &= buffer.get(next) == CONTINUATION && buffer.get(next + 1) == checksum(buffer, next);
+			if (!valid)
+				continue;
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++)
+				bytes[i] = buffer.get(byteOffset(offset, i));
+			clicks.accept(new String(bytes, StandardCharsets.UTF_8), buffer.getInt(offset + 2));
+			records++;
+			offset += size - RECORD;
+		}
+		return records;
+	}
+
+	private static int recordsOf(int length)
+	{
+		return length <= FIRST_BYTES ? 1 : 1 + (length - FIRST_BYTES + NEXT_BYTES - 1) / NEXT_BYTES;
+	}
+
+	// position of i-th short URL byte of a record starting at offset
+	private static int byteOffset(int offset, int i)
+	{
+		if (i < FIRST_BYTES)
+			return offset + 8 + i;
+		i -= FIRST_BYTES;
+		return offset + (1 + i / NEXT_BYTES) * RECORD + 2 + i % NEXT_BYTES;
+	}
+
+	// checksum of record bytes after the type and checksum bytes, detects torn records
+	private static byte checksum(MappedByteBuffer buffer, int offset)
+	{
+		int sum = 0x5A;
+		for (int i = offset + 2; i < offset + RECORD; i++)
+			sum = sum * 31 + buffer.get(i);
+		return (byte) (sum ^ sum >>> 8 ^ sum >>> 16 ^ sum >>> 24);
+	}
+
+	private static int utf8Length(String shortUrl)
+	{
+		int length = 0;
+		for (int i = 0; i < shortUrl.length(); i++)
+		{
+			char c = shortUrl.charAt(i);
+			if (c < 0x80)
+				length++;
+			else if (c < 0x800)
+				length += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < shortUrl.length() && Character.isLowSurrogate(shortUrl.charAt(i + 1)))
+			{
+				length += 4;
+				i++;
+			}
+			else
+				length += 3;
+		}
+		return length;
+	}
+
+	/**
+	 * Chain of segments written by one generation of click counters.
+	 */
+	public final class Log
+	{
+		// guarded by this
+		private final List<Segment> segments;
+		private volatile Segment current;
+
+		private Log(List<Segment> segments)
+		{
+			this.segments = segments;
+		}
+
+		/**
+		 * This method writes one record, it is called concurrently by redirect threads.
+		 *
+		 * @param (shortUrl) (short URL clicked, at most 65535 bytes)
+		 * @param (clicks) (number of clicks)
+		 */
+		public void append(String shortUrl, long clicks)
+		{
+			if (!enabled)
+				return;
+			int length = utf8Length(shortUrl);
+			int size = recordsOf(length) * RECORD;
+			for (; clicks > Integer.MAX_VALUE; clicks -= Integer.MAX_VALUE)
+				write(shortUrl, length, size, Integer.MAX_VALUE);
+			write(shortUrl, length, size, (int) clicks);
+		}
+
+		private void write(String shortUrl, int length, int size, int clicks)
+		{
+			while (true)
+			{
+				Segment segment = current;
+				if (segment != null)
+				{
+					long offset = segment.position.getAndAdd(size);
+					if (offset + size <= segment.capacity)
+					{
+						segment.write((int) offset, shortUrl, length, clicks);
+						return;
+					}
+				}
+				roll(segment);
+			}
+		}
+
+		private synchronized void roll(Segment full)
+		{
+			if (current == full)
+			{
+				Segment next = create();
+				segments.add(next);
+				current = next;
+			}
+		}
+	}
+
+	private static final class Segment
+	{
+		final File file;
+		final MappedByteBuffer buffer;
+		final int capacity;
+		// next free byte, may run past capacity when segment is full
+		final AtomicLong position = new AtomicLong();
+		// bytes forced to disk by the last commit
+		volatile long forced;
+
+		Segment(File file, MappedByteBuffer buffer)
+		{
+			this.file = file;
+			this.buffer = buffer;
+			this.capacity = buffer.capacity() / RECORD * RECORD;
+		}
+
+		/**
+		 * This method writes records of one click entry into reserved space.
+		 * Type bytes are written last, so a reader never takes a half written entry.
+		 */
+		void write(int offset, String shortUrl, int length, int clicks)
+		{
+			buffer.putInt(offset + 2, clicks);
+			buffer.putShort(offset + 6, (short) length);
+			int i = 0;
+			for (int c = 0; c < shortUrl.length(); c++)
+			{
+				char ch = shortUrl.charAt(c);
+				if (ch < 0x80)
+					buffer.put(byteOffset(offset, i++), (byte) ch);
+				else if (ch < 0x800)
+				{
+					buffer.put(byteOffset(offset, i++), (byte) (0xC0 | ch >> 6));
+					buffer.put(byteOffset(offset, i++), (byte) (0x80 | ch & 0x3F));
+				}
+				else if (Character.isHighSurrogate(ch) && c + 1 < shortUrl.length() && Character.isLowSurrogate(shortUrl.charAt(c + 1)))
+				{
+					int codePoint = Character.toCodePoint(ch, shortUrl.charAt(++c));
+					buffer.put(byteOffset(offset, i++), (byte) (0xF0 | codePoint >> 18));
+					buffer.put(byteOffset(offset, i++), (byte) (0x80 | codePoint >> 12 & 0x3F));
+					buffer.put(byteOffset(offset, i++), (byte) (0x80 | codePoint >> 6 & 0x3F));
+					buffer.put(byteOffset(offset, i++), (byte) (0x80 | codePoint & 0x3F));
+				}
+				else
+				{
+					buffer.put(byteOffset(offset, i++), (byte) (0xE0 | ch >> 12));
+					buffer.put(byteOffset(offset, i++), (byte) (0x80 | ch >> 6 & 0x3F));
+					buffer.put(byteOffset(offset, i++), (byte) (0x80 | ch & 0x3F));
+				}
+			}
+			int end = offset + recordsOf(length) * RECORD;
+			for (int next = offset + RECORD; next < end; next += RECORD)
+			{
+				buffer.put(next + 1, checksum(buffer, next));
+				buffer.put(next, CONTINUATION);
+			}
+			buffer.put(offset + 1, checksum(buffer, offset));
+			buffer.put(offset, CLICKS);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.nttdata.urlshortener.clicks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+* This class counts clicks per short URL and minute until they are stored to DB
+* as pre-aggregated buckets (see ClickFlusher).
+* Redirect threads only increment a LongAdder of the current minute. Minutes are
+* swapped on the first click of the next minute, closed minutes are folded
+* in the background into compact per link series holding only minutes with clicks.
+*/
+@Component
+public class ClickTimeSeries
+{
+	private static final long MINUTE = Granularity.MINUTE.getMillis();
+	// clicks of a thread that read the minute just before it closed are awaited this long
+	private static final long GRACE_MILLIS = 1000;
+
+	// minute redirect threads count into
+	private final AtomicReference<Minute> current = new AtomicReference<Minute>(new Minute(System.currentTimeMillis() / MINUTE));
+	// minutes no longer counted into, not folded yet
+	private final ConcurrentLinkedQueue<Minute> closed = new ConcurrentLinkedQueue<Minute>();
+	// folded minutes not stored to DB yet, guarded by this
+	private Map<String, Series> pending = new HashMap<String, Series>();
+
+	/**
+	 * This method registers one click of short URL at current time.
+	 *
+	 * @param (shortUrl) (short URL clicked)
+	 */
+	public void record(String shortUrl)
+	{
+		long minute = System.currentTimeMillis() / MINUTE;
+		Minute bucket = current.get();
+		if (minute > bucket.minute)
+			bucket = roll(bucket, minute);
+		LongAdder counter = bucket.counts.get(shortUrl);
+		if (counter == null)
+			counter = bucket.counts.computeIfAbsent(shortUrl, key -> new LongAdder());
+		counter.increment();
+	}
+
+	private Minute roll(Minute expected, long minute)
+	{
+		Minute next = new Minute(minute);
+		if (current.compareAndSet(expected, next))
+		{
+			closed.add(expected);
+			return next;
+		}
+		return current.get();
+	}
+
+	/**
+	 * This method moves closed minutes to pending series.
+	 */
+	@Scheduled(fixedDelay = 15000)
+	public void fold()
+	{
+		fold(System.currentTimeMillis(), false);
+	}
+
+	private synchronized void fold(long now, boolean all)
+	{
+		if (all)
+			closed.add(current.getAndSet(new Minute(now / MINUTE)));
+		Minute minute;
+		while ((minute = closed.peek()) != null && (all || (minute.minute + 1) * MINUTE + GRACE_MILLIS <= now))
+		{
+			closed.poll();
+			for (Map.Entry<String, LongAdder> entry : minute.counts.entrySet())
+				pending.computeIfAbsent(entry.getKey(), key -> new Series()).add(minute.minute, entry.getValue().sum());
+		}
+	}
+
+	/**
+	 * This method takes all folded minutes out of memory, the current minute stays.
+	 *
+	 * @param (all) (true on shutdown, current minute is taken as well)
+	 * @return (series) (short URL - clicks per minute map)
+	 */
+	public synchronized Map<String, Series> drain(boolean all)
+	{
+		fold(System.currentTimeMillis(), all);
+		Map<String, Series> drained = pending;
+		pending = new HashMap<String, Series>();
+		return drained;
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (series) (clicks per minute not stored to DB yet)
+	 */
+	public synchronized Series tail(String shortUrl)
+	{
+		Series tail = new Series();
+		Series folded = pending.get(shortUrl);
+		if (folded != null)
+			for (int i = 0; i < folded.size; i++)
+				tail.add(folded.minutes[i], folded.counts[i]);
+		for (Minute minute : closed)
+			tail.add(minute.minute, minute.sum(shortUrl));
+		Minute minute = current.get();
+		tail.add(minute.minute, minute.sum(shortUrl));
+		return tail;
+	}
+
+	private static final class Minute
+	{
+		// epoch minute
+		final long minute;
+		final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<String, LongAdder>();
+
+		Minute(long minute)
+		{
+			this.minute = minute;
+		}
+
+		long sum(String shortUrl)
+		{
+			LongAdder counter = counts.get(shortUrl);
+			return counter == null ? 0 : counter.sum();
+		}
+	}
+
+	/**
+	 * Clicks of one short URL per minute, ordered by minute, minutes without clicks are left out.
+	 */
+	public static final class Series
+	{
+		private long[] minutes = new long[4];
+		private long[] counts = new long[4];
+		private int size;
+
+		/**
+		 * @param (minute) (epoch minute)
+		 * @param (clicks) (clicks to add)
+		 */
+		public void add(long minute, long clicks)
+		{
+			if (clicks == 0)
+				return;
+			// minutes come in order, search from the end
+			int i = size;
+			while (i > 0 && minutes[i - 1] > minute)
+				i--;
+			if (i > 0 && minutes[i - 1] == minute)
+			{
+				counts[i - 1] += clicks;
+				return;
+			}
+			if (size == minutes.length)
+			{
+				minutes = Arrays.copyOf(minutes, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			System.arraycopy(minutes, i, minutes, i + 1, size - i);
+			System.arraycopy(counts, i, counts, i + 1, size - i);
+			minutes[i] = minute;
+			counts[i] = clicks;
+			size++;
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 * @return (time) (start of i-th minute, epoch milliseconds)
+		 */
+		public long time(int i)
+		{
+			return minutes[i] * MINUTE;
+		}
+
+		public long clicks(int i)
+		{
+			return counts[i];
+		}
+	}
+}
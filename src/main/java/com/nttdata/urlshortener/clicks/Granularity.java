@@ -0,0 +1,69 @@
+package com.nttdata.urlshortener.clicks;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+* Time bucket sizes of click time series, all in UTC.
+* Buckets are stored grouped in documents (see ClickBucket), one document holds
+* the minutes of an hour, the hours of a day or the days of a month.
+*/
+public enum Granularity
+{
+	MINUTE(60000L), HOUR(3600000L), DAY(86400000L);
+
+	// bucket length
+	private final long millis;
+
+	Granularity(long millis)
+	{
+		this.millis = millis;
+	}
+
+	public long getMillis()
+	{
+		return millis;
+	}
+
+	/**
+	 * @param (time) (epoch milliseconds)
+	 * @return (start) (start of the bucket holding time)
+	 */
+	public long floor(long time)
+	{
+		return Math.floorDiv(time, millis) * millis;
+	}
+
+	/**
+	 * @param (time) (epoch milliseconds)
+	 * @return (start) (start of the document holding the bucket of time)
+	 */
+	public long documentStart(long time)
+	{
+		switch (this)
+		{
+			case MINUTE:
+				return HOUR.floor(time);
+			case HOUR:
+				return DAY.floor(time);
+			default:
+				LocalDate month = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate().withDayOfMonth(1);
+				return month.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		}
+	}
+
+	/**
+	 * @param (time) (epoch milliseconds)
+	 * @return (offset) (index of the bucket of time within its document)
+	 */
+	public int offset(long time)
+	{
+		return (int) ((floor(time) - documentStart(time)) / millis);
+	}
+
+	public static Granularity parse(String name)
+	{
+		return valueOf(name.trim().toUpperCase());
+	}
+}
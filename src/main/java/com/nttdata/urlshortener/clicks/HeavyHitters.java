@@ -0,0 +1,218 @@
+package com.nttdata.urlshortener.clicks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nttdata.urlshortener.model.HotLink;
+import com.nttdata.urlshortener.utilities.CountMinSketch;
+import com.nttdata.urlshortener.utilities.Hashing;
+
+/**
+* This class tracks the most clicked short URLs over sliding windows in fixed memory.
+* Time is cut into slices, every slice has its own Count-Min Sketch and a small table
+* of candidates, short URLs whose estimate was the highest in their two table slots.
+* Redirect threads only increment atomic counters; a candidate object is allocated
+* only when a short URL displaces another one. A window sums the sketches of its
+* slices for all candidates seen in any of them.
+*/
+@Component
+public class HeavyHitters
+{
+	private final long sliceMillis;
+	// slices by epoch slice modulo their number, older than the longest window once overwritten
+	private final AtomicReferenceArray<Slice> slices;
+	private final AtomicReference<Slice> current;
+	private final int sketchWidth;
+	private final int sketchDepth;
+	private final int candidates;
+	private final int maxK;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (sliceSeconds) (window granularity)
+	 * @param (sliceCount) (number of slices kept, longest window is sliceSeconds * sliceCount)
+	 * @param (sketchWidth) (counters per sketch row, estimates overcount by about 2.7 / width of slice clicks)
+	 * @param (sketchDepth) (sketch rows)
+	 * @param (candidates) (candidate slots per slice, rounded up to a power of two)
+	 * @param (maxK) (largest top list served)
+	 */
+	public HeavyHitters(@Value("${urlshortener.hot.slice-seconds:60}") int sliceSeconds,
+			@Value("${urlshortener.hot.slices:60}") int sliceCount,
+			@Value("${urlshortener.hot.sketch-width:2048}") int sketchWidth,
+			@Value("${urlshortener.hot.sketch-depth:4}") int sketchDepth,
+			@Value("${urlshortener.hot.candidates:1024}") int candidates,
+			@Value("${urlshortener.hot.max-k:100}") int maxK)
+	{
+		this.sliceMillis = sliceSeconds * 1000L;
+		this.slices = new AtomicReferenceArray<Slice>(sliceCount);
+		this.sketchWidth = sketchWidth;
+		this.sketchDepth = sketchDepth;
+		this.candidates = Integer.highestOneBit(Math.max(2, candidates) * 2 - 1);
+		this.maxK = maxK;
+		Slice first = new Slice(System.currentTimeMillis() / sliceMillis);
+		slices.set((int) (first.epoch % sliceCount), first);
+		this.current = new AtomicReference<Slice>(first);
+	}
+
+	/**
+	 * This method registers one click of short URL at current time.
+	 *
+	 * @param (shortUrl) (short URL clicked)
+	 */
+	public void record(String shortUrl)
+	{
+		long epoch = System.currentTimeMillis() / sliceMillis;
+		Slice slice = current.get();
+		if (epoch > slice.epoch)
+			slice = roll(slice, epoch);
+		long hash = Hashing.hash64(shortUrl);
+		slice.offer(shortUrl, hash, slice.sketch.add(hash));
+	}
+
+	private Slice roll(Slice expected, long epoch)
+	{
+		Slice next = new Slice(epoch);
+		if (current.compareAndSet(expected, next))
+		{
+			slices.set((int) (epoch % slices.length()), next);
+			return next;
+		}
+		return current.get();
+	}
+
+	/**
+	 * @param (k) (number of short URLs, up to urlshortener.hot.max-k)
+	 * @param (windowMillis) (window length ending now, rounded up to whole slices)
+	 * @return (top) (at most k short URLs by estimated clicks in window, most clicked first)
+	 */
+	public List<HotLink> top(int k, long windowMillis)
+	{
+		if (k < 1 || k > maxK)
+			throw new IllegalArgumentException("k must be between 1 and " + maxK);
+		if (windowMillis <= 0 || windowMillis > sliceMillis * slices.length())
+			throw new IllegalArgumentException("window must be positive and at most " + sliceMillis * slices.length() / 1000 + " seconds");
+
+		long last = System.currentTimeMillis() / sliceMillis;
+		long first = last - (windowMillis + sliceMillis - 1) / sliceMillis + 1;
+		List<Slice> window = new ArrayList<Slice>();
+		for (int i = 0; i < slices.length(); i++)
+		{
+			Slice slice = slices.get(i);
+			if (slice != null && slice.epoch >= first && slice.epoch <= last)
+				window.add(slice);
+		}
+
+		// candidates of all slices, estimated over the whole window
+		Map<String, Long> estimates = new HashMap<String, Long>();
+		for (Slice slice : window)
+			for (int i = 0; i < slice.table.length(); i++)
+			{
+				Candidate candidate = slice.table.get(i);
+				if (candidate == null || estimates.containsKey(candidate.shortUrl))
+					continue;
+				long hash = Hashing.hash64(candidate.shortUrl);
+				long clicks = 0;
+				for (Slice counted : window)
+					clicks += counted.sketch.estimate(hash);
+				estimates.put(candidate.shortUrl, clicks);
+			}
+
+		List<HotLink> top = new ArrayList<HotLink>(estimates.size());
+		for (Map.Entry<String, Long> entry : estimates.entrySet())
+			top.add(new HotLink(entry.getKey(), entry.getValue()));
+		top.sort((a, b) -> Long.compare(b.getClicks(), a.getClicks()));
+		return top.size() > k ? new ArrayList<HotLink>(top.subList(0, k)) : top;
+	}
+
+	/**
+	 * This method parses window length like "30s", "5m", "1h" or "1d", plain number is minutes.
+	 *
+	 * @param (window) (window length)
+	 * @return (millis) (window length in milliseconds)
+	 */
+	public static long parseWindow(String window)
+	{
+		String value = window.trim().toLowerCase();
+		long unit = 60000;
+		switch (value.isEmpty() ? ' ' : value.charAt(value.length() - 1))
+		{
+		case 's':
+			unit = 1000;
+			break;
+		case 'm':
+			break;
+		case 'h':
+			unit = 3600000;
+			break;
+		case 'd':
+			unit = 86400000;
+			break;
+		default:
+			// number of minutes, anything else fails to parse
+			value += 'm';
+		}
+		value = value.substring(0, value.length() - 1);
+		return Long.parseLong(value) * unit;
+	}
+
+	private final class Slice
+	{
+		final long epoch;
+		final CountMinSketch sketch = new CountMinSketch(sketchWidth, sketchDepth);
+		final AtomicReferenceArray<Candidate> table = new AtomicReferenceArray<Candidate>(candidates);
+
+		Slice(long epoch)
+		{
+			this.epoch = epoch;
+		}
+
+		/**
+		 * This method keeps short URL as candidate if it is already one, or if its estimate
+		 * beats the smaller of the two candidates in its slots.
+		 */
+		void offer(String shortUrl, long hash, long estimate)
+		{
+			int mask = candidates - 1;
+			int first = (int) hash & mask;
+			int second = (int) (hash >>> 32) & mask;
+			Candidate a = table.get(first);
+			if (a != null && a.shortUrl.equals(shortUrl))
+			{
+				a.clicks = estimate;
+				return;
+			}
+			Candidate b = table.get(second);
+			if (b != null && b.shortUrl.equals(shortUrl))
+			{
+				b.clicks = estimate;
+				return;
+			}
+			int slot = b == null || a != null && b.clicks < a.clicks ? second : first;
+			Candidate victim = slot == first ? a : b;
+			// lost race only means another short URL took the slot meanwhile
+			if (victim == null || estimate > victim.clicks)
+				table.compareAndSet(slot, victim, new Candidate(shortUrl, estimate));
+		}
+	}
+
+	private static final class Candidate
+	{
+		final String shortUrl;
+		// slice estimate at last click, decides which candidate is displaced
+		volatile long clicks;
+
+		Candidate(String shortUrl, long clicks)
+		{
+			this.shortUrl = shortUrl;
+			this.clicks = clicks;
+		}
+	}
+}
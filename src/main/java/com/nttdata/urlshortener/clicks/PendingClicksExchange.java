@@ -0,0 +1,119 @@
+package com.nttdata.urlshortener.clicks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+* This class shares clicks counted in memory between nodes, so stats answered by one node
+* include clicks other nodes have not stored yet.
+* Every node publishes its pending clicks as one document of "pending_clicks" every few seconds;
+* a stats read fetches only the matching array element of other live nodes' documents, by index.
+* Counts of other nodes are as old as their last publish, so a click may be missed
+* or, right after its node stored it, counted twice for one publish interval.
+*/
+@Component
+public class PendingClicksExchange
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final String COLLECTION = "pending_clicks";
+	private static final String PENDING = "Pending";
+	private static final String UPDATED = "Updated";
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private ClickCounterStore clickCounters;
+	@Value("${urlshortener.coherence.enabled:false}")
+	private boolean enabled;
+	// identifies this node's document, new on every start
+	@Value("${urlshortener.coherence.node-id:${random.uuid}}")
+	private String nodeId;
+	@Value("${urlshortener.coherence.publish-interval-ms:10000}")
+	private long publishInterval;
+	// true while this node's document holds clicks
+	private boolean published;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void createIndexes()
+	{
+		if (!enabled)
+			return;
+		try
+		{
+			mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index().on(PENDING + ".s", Direction.ASC));
+			// documents of nodes gone without cleanup
+			mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index().on(UPDATED, Direction.ASC).expire(publishInterval * 3, TimeUnit.MILLISECONDS));
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * This method replaces this node's document with its current pending clicks.
+	 */
+	@Scheduled(fixedDelayString = "${urlshortener.coherence.publish-interval-ms:10000}")
+	public synchronized void publish()
+	{
+		if (!enabled)
+			return;
+		try
+		{
+			Map<String, Long> pending = clickCounters.pendingCounts();
+			if (pending.isEmpty())
+			{
+				if (published)
+					mongoTemplate.remove(new Query(Criteria.where("_id").is(nodeId)), COLLECTION);
+				published = false;
+				return;
+			}
+			List<Document> entries = new ArrayList<Document>(pending.size());
+			for (Map.Entry<String, Long> entry : pending.entrySet())
+				entries.add(new Document("s", entry.getKey()).append("c", entry.getValue()));
+			mongoTemplate.save(new Document("_id", nodeId).append(PENDING, entries).append(UPDATED, new Date()), COLLECTION);
+			published = true;
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (clicks) (clicks other nodes have not stored to DB yet, 0 if exchange is disabled)
+	 */
+	public long pendingElsewhere(String shortUrl)
+	{
+		if (!enabled)
+			return 0;
+		Query query = new Query(Criteria.where("_id").ne(nodeId)
+				.and(UPDATED).gt(new Date(System.currentTimeMillis() - publishInterval * 3))
+				.and(PENDING + ".s").is(shortUrl));
+		query.fields().elemMatch(PENDING, Criteria.where("s").is(shortUrl));
+		long clicks = 0;
+		for (Document node : mongoTemplate.find(query, Document.class, COLLECTION))
+			for (Object entry : (List<?>) node.get(PENDING))
+				clicks += ((Number) ((Document) entry).get("c")).longValue();
+		return clicks;
+	}
+}
@@ -0,0 +1,77 @@
+package com.nttdata.urlshortener.config;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import com.nttdata.urlshortener.controller.AdmissionFilter;
+import com.nttdata.urlshortener.utilities.RateLimiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+* This class registers admission control ahead of all other filters, with separate budgets
+* for creates and redirects. Creates have a budget of all clients together as well,
+* so write overload is turned away before it slows down MongoDB for redirects.
+*/
+@Configuration
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class AdmissionConfiguration
+{
+	@Value("${urlshortener.admission.enabled:true}")
+	private boolean enabled;
+	@Value("${urlshortener.admission.client-header:X-Api-Key}")
+	private String clientHeader;
+	// keys trusted in the client header, clients with none are told apart by remote address
+	@Value("${urlshortener.admission.api-keys:}")
+	private String[] apiKeys;
+	@Value("${urlshortener.admission.stripes:4096}")
+	private int stripes;
+
+	@Bean
+	public FilterRegistrationBean<AdmissionFilter> createAdmissionFilter(MeterRegistry registry,
+			@Value("${urlshortener.admission.create.client-rate:20}") double clientRate,
+			@Value("${urlshortener.admission.create.client-burst:50}") int clientBurst,
+			@Value("${urlshortener.admission.create.total-rate:1000}") double totalRate,
+			@Value("${urlshortener.admission.create.total-burst:1000}") int totalBurst)
+	{
+		AdmissionFilter filter = new AdmissionFilter("create", new RateLimiter(clientRate, clientBurst, stripes),
+				new RateLimiter(totalRate, totalBurst, 1), clientHeader, apiKeys(), registry);
+		return register(filter, "/create", "/create/*", "/init/*");
+	}
+
+	@Bean
+	public FilterRegistrationBean<AdmissionFilter> redirectAdmissionFilter(MeterRegistry registry,
+			@Value("${urlshortener.admission.redirect.client-rate:500}") double clientRate,
+			@Value("${urlshortener.admission.redirect.client-burst:1000}") int clientBurst)
+	{
+		AdmissionFilter filter = new AdmissionFilter("redirect", new RateLimiter(clientRate, clientBurst, stripes), null, clientHeader, apiKeys(),
+				registry);
+		return register(filter, "/longurl/*");
+	}
+
+	private Set<String> apiKeys()
+	{
+		Set<String> keys = new HashSet<String>(Arrays.asList(apiKeys));
+		keys.remove("");
+		return keys;
+	}
+
+	private FilterRegistrationBean<AdmissionFilter> register(AdmissionFilter filter, String... urlPatterns)
+	{
+		FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<AdmissionFilter>(filter);
+		registration.addUrlPatterns(urlPatterns);
+		// before RedirectFilter, which answers redirects itself
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+		registration.setEnabled(enabled);
+		return registration;
+	}
+}
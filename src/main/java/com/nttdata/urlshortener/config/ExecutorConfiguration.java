@@ -0,0 +1,123 @@
+package com.nttdata.urlshortener.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+* This class declares executors used for background work,
+* so it never runs on request or scheduler threads.
+*/
+@Configuration
+public class ExecutorConfiguration
+{
+	/**
+	 * Threads of all @Scheduled methods. Full collection scans (filter rebuild, redirect table
+	 * export, long URL index load) take minutes on large collections, with one thread they
+	 * would hold up expiry ticks, coherence and snapshots meanwhile.
+	 *
+	 * @return (scheduler) (scheduler of @Scheduled methods)
+	 */
+	@Bean
+	public ThreadPoolTaskScheduler taskScheduler(@Value("${urlshortener.scheduling.threads:4}") int threads)
+	{
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setPoolSize(threads);
+		scheduler.setThreadNamePrefix("scheduling-");
+		return scheduler;
+	}
+
+	/**
+	 * Single thread forcing the click journal to disk, see ClickJournal.
+	 * It is not shared with @Scheduled methods, so crash safety does not wait for scans.
+	 *
+	 * @return (scheduler) (journal commit scheduler)
+	 */
+	@Bean
+	public ThreadPoolTaskScheduler journalScheduler()
+	{
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setPoolSize(1);
+		scheduler.setThreadNamePrefix("journal-commit-");
+		return scheduler;
+	}
+
+	/**
+	 * Single thread storing in memory clicks to DB.
+	 * Only one flush may be queued, further requests are dropped by ClickFlusher.
+	 *
+	 * @return (executor) (click flush executor)
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor clickFlushExecutor()
+	{
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(1);
+		executor.setThreadNamePrefix("click-flush-");
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(30);
+		return executor;
+	}
+
+	/**
+	 * Threads writing chunks of bulk imports, every import keeps at most one chunk in flight.
+	 * When all threads are busy the importing request thread writes the chunk itself.
+	 *
+	 * @return (executor) (link import executor)
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor linkImportExecutor(@Value("${urlshortener.import.threads:4}") int threads)
+	{
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(threads);
+		executor.setThreadNamePrefix("link-import-");
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(30);
+		return executor;
+	}
+
+	/**
+	 * Single thread writing links of create requests in batches, see LinkInsertBatcher.
+	 * A new write task is only queued when the previous one has run out of links.
+	 *
+	 * @return (executor) (link insert executor)
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor linkInsertExecutor()
+	{
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(1);
+		executor.setThreadNamePrefix("link-insert-");
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(30);
+		return executor;
+	}
+
+	/**
+	 * Threads querying links missing from the cache, see LinkLookupCoordinator.
+	 * Tasks are only started while fewer than threads are running.
+	 *
+	 * @return (executor) (link lookup executor)
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor linkLookupExecutor(@Value("${urlshortener.lookup.threads:4}") int threads)
+	{
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(threads);
+		executor.setThreadNamePrefix("link-lookup-");
+		return executor;
+	}
+}
@@ -0,0 +1,46 @@
+package com.nttdata.urlshortener.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.nttdata.urlshortener.controller.LinkController;
+import com.nttdata.urlshortener.metrics.EndpointMetricsInterceptor;
+import com.nttdata.urlshortener.metrics.RepositoryMetricsPostProcessor;
+import com.nttdata.urlshortener.repository.ILinkRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+* This class wires instrumentation of hot paths, metrics are served at /actuator/prometheus.
+* Components with their own gauges and counters (clicks, cache, filters) implement MeterBinder.
+*/
+@Configuration
+public class MetricsConfiguration
+{
+	// static, post processor must not pull other beans in early
+	@Bean
+	public static RepositoryMetricsPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry)
+	{
+		return new RepositoryMetricsPostProcessor(ILinkRepository.class, registry);
+	}
+
+	@Configuration
+	@ConditionalOnWebApplication(type = Type.SERVLET)
+	static class EndpointMetricsConfiguration implements WebMvcConfigurer
+	{
+		@Autowired
+		private MeterRegistry registry;
+
+		@Override
+		public void addInterceptors(InterceptorRegistry interceptors)
+		{
+			interceptors.addInterceptor(new EndpointMetricsInterceptor(registry, LinkController.class));
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.nttdata.urlshortener.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+* This class configures reactive serving mode (profile "reactive").
+* Tomcat is on the class path for the war, Netty is chosen explicitly,
+* so requests are served by a few event-loop threads.
+*/
+@Configuration
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveConfiguration
+{
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory()
+	{
+		return new NettyReactiveWebServerFactory();
+	}
+}
@@ -0,0 +1,37 @@
+package com.nttdata.urlshortener.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import com.nttdata.urlshortener.controller.RedirectFilter;
+import com.nttdata.urlshortener.metrics.EndpointTimers;
+import com.nttdata.urlshortener.service.RedirectService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+* This class registers the redirect fast path ahead of the DispatcherServlet, after admission control.
+* When it is disabled, redirects are answered by LinkController.
+*/
+@Configuration
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class RedirectConfiguration
+{
+	@Bean
+	public FilterRegistrationBean<RedirectFilter> redirectFilter(RedirectService redirectService, MeterRegistry registry,
+			@Value("${urlshortener.redirect.fast-path:true}") boolean enabled)
+	{
+		RedirectFilter filter = new RedirectFilter(redirectService, new EndpointTimers(registry, "/longurl/{shortUrl}"));
+		FilterRegistrationBean<RedirectFilter> registration = new FilterRegistrationBean<RedirectFilter>(filter);
+		registration.addUrlPatterns(RedirectFilter.PATH + "*");
+		// right after admission control
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+		registration.setEnabled(enabled);
+		return registration;
+	}
+}
@@ -0,0 +1,21 @@
+package com.nttdata.urlshortener.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.nttdata.urlshortener.service.KeyRangeAllocator;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+/**
+* This class wires URL reducer with sequence numbers leased from DB.
+*/
+@Configuration
+public class ShortenerConfiguration
+{
+	@Bean
+	public UrlReducer urlReducer(@Value("${urlshortener.domain:http://yz0101.com/}") String domain, KeyRangeAllocator allocator)
+	{
+		return new UrlReducer(domain, allocator);
+	}
+}
@@ -0,0 +1,35 @@
+package com.nttdata.urlshortener.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+
+/**
+* This class configures how documents are stored.
+* Type hints can be omitted: the "_class" field is no longer written into every document,
+* only Link is stored in "links", so the hint is never needed to read it.
+* Existing documents lose it through LinkStorageMigration.
+* Field names and types are unchanged, so nodes with and without hints can share the DB.
+*/
+@Configuration
+public class StorageConfiguration
+{
+	// static, post processor must not pull other beans in early
+	@Bean
+	public static BeanPostProcessor typeHintPostProcessor(@Value("${urlshortener.storage.omit-type-hint:false}") boolean omitTypeHint)
+	{
+		return new BeanPostProcessor()
+		{
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName)
+			{
+				if (omitTypeHint && bean instanceof MappingMongoConverter)
+					((MappingMongoConverter) bean).setTypeMapper(new DefaultMongoTypeMapper(null));
+				return bean;
+			}
+		};
+	}
+}
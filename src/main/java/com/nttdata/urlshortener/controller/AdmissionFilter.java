@@ -0,0 +1,132 @@
+package com.nttdata.urlshortener.controller;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+
+import com.nttdata.urlshortener.utilities.Hashing;
+import com.nttdata.urlshortener.utilities.RateLimiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+* This class admits requests of one kind of endpoints within the budget of their client,
+* and, if given, within a budget of all clients together. Requests over budget are answered
+* 429 with Retry-After at once, so they cost neither a thread nor a DB operation.
+* Client is identified by a header (API key) if it holds one of the configured keys,
+* by remote address otherwise, so made up keys do not get a fresh budget each.
+* Work of an admitted request beyond one operation (links of a bulk create) is charged to
+* the same budgets through the LongSupplier left in request attribute BUDGET.
+*/
+public class AdmissionFilter implements Filter
+{
+	public static final String METRIC = "urlshortener.admission.requests";
+	// request attribute, LongSupplier charging one more operation: 0 once charged, otherwise nanoseconds until it would be
+	public static final String BUDGET = "urlshortener.admission.budget";
+
+	private final RateLimiter clients;
+	// budget of all clients together, null if unlimited
+	private final RateLimiter total;
+	private final String clientHeader;
+	// API keys accepted as client identity
+	private final Set<String> apiKeys;
+	private final Counter admitted;
+	private final Counter throttled;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (endpoint) (name of the endpoints, metrics tag)
+	 * @param (clients) (budget of each client)
+	 * @param (total) (budget of all clients together, null if unlimited)
+	 * @param (clientHeader) (request header identifying the client)
+	 * @param (apiKeys) (API keys accepted in the header)
+	 * @param (registry) (registry counters are created in)
+	 */
+	public AdmissionFilter(String endpoint, RateLimiter clients, RateLimiter total, String clientHeader, Set<String> apiKeys,
+			MeterRegistry registry)
+	{
+		this.clients = clients;
+		this.total = total;
+		this.clientHeader = clientHeader;
+		this.apiKeys = apiKeys;
+		this.admitted = Counter.builder(METRIC)
+				.description("Requests admitted or throttled by admission control")
+				.tags("endpoint", endpoint, "outcome", "admitted")
+				.register(registry);
+		this.throttled = Counter.builder(METRIC)
+				.description("Requests admitted or throttled by admission control")
+				.tags("endpoint", endpoint, "outcome", "throttled")
+				.register(registry);
+	}
+
+	@Override
+	public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException
+	{
+		HttpServletRequest request = (HttpServletRequest) servletRequest;
+		String apiKey = request.getHeader(clientHeader);
+		long client = Hashing.hash64(apiKey != null && apiKeys.contains(apiKey) ? apiKey : request.getRemoteAddr());
+		long wait = acquire(client);
+		if (wait > 0)
+		{
+			throttled.increment();
+			HttpServletResponse response = (HttpServletResponse) servletResponse;
+			response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+			response.setHeader("Retry-After", Long.toString(retryAfter(wait)));
+			return;
+		}
+		admitted.increment();
+		request.setAttribute(BUDGET, (LongSupplier) () -> acquire(client));
+		chain.doFilter(servletRequest, servletResponse);
+	}
+
+	/**
+	 * @param (client) (hash of client identity)
+	 * @return (wait) (0 if one operation is admitted, otherwise nanoseconds until it would be)
+	 */
+	private long acquire(long client)
+	{
+		long wait = clients.acquire(client);
+		// a client over its own budget does not use up the shared one
+		if (wait == 0 && total != null)
+		{
+			wait = total.acquire(0);
+			// nor does a request turned away by the shared one use up the client's
+			if (wait > 0)
+				clients.release(client);
+		}
+		return wait;
+	}
+
+	/**
+	 * @param (wait) (nanoseconds until the request would be admitted)
+	 * @return (seconds) (Retry-After, whole seconds rounded up, at least 1)
+	 */
+	static long retryAfter(long wait)
+	{
+		return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig)
+	{
+	}
+
+	@Override
+	public void destroy()
+	{
+	}
+}
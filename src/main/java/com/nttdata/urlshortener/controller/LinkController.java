@@ -4,36 +4,68 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import com.nttdata.urlshortener.clicks.ClickCounterStore;
+import com.nttdata.urlshortener.clicks.ClickFlusher;
+import com.nttdata.urlshortener.clicks.Granularity;
+import com.nttdata.urlshortener.clicks.HeavyHitters;
+import com.nttdata.urlshortener.model.ClickCount;
+import com.nttdata.urlshortener.model.HotLink;
 import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.model.LinkPage;
+import com.nttdata.urlshortener.service.ClickStatsService;
+import com.nttdata.urlshortener.service.LinkExportService;
+import com.nttdata.urlshortener.service.LinkImportService;
 import com.nttdata.urlshortener.service.LinkService;
-import com.nttdata.urlshortener.utilities.UrlReducer;
+import com.nttdata.urlshortener.service.RedirectService;
 import com.nttdata.urlshortener.utilities.Utilities;
 
 @RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
 public class LinkController
 {
 	@Autowired
 	private LinkService service;
+	@Autowired
+	private LinkImportService importService;
+	@Autowired
+	private LinkExportService exportService;
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 	// click counter holder for short links
-	private Map clickCounters = new TreeMap();
+	@Autowired
+	private ClickCounterStore clickCounters;
+	@Autowired
+	private ClickFlusher clickFlusher;
+	@Autowired
+	private ClickStatsService clickStats;
+	// most clicked short URLs over sliding windows
+	@Autowired
+	private HeavyHitters heavyHitters;
+	// answers redirects, RedirectFilter shares it
+	@Autowired
+	private RedirectService redirectService;
 	// 1 Year default link entry life span
 	private int DEFAULT_LIFE_SPAN = 365;
-	private String REDUCER_DOMAIN = "http://yz0101.com/";
-	private UrlReducer reducer = new UrlReducer(REDUCER_DOMAIN);
+	@Value("${urlshortener.domain:http://yz0101.com/}")
+	private String REDUCER_DOMAIN;
 
 	/************************************ 1. CREATE SHORT URL ************************************************/
 	@RequestMapping("/create")
@@ -42,26 +74,36 @@ public class LinkController
 		boolean custom = !shortUrl.isEmpty();
 		try
 		{
-			// decode original URL
-			longUrl = new String(longUrl.getBytes("UTF-8"), "ASCII");
-			// create short URL if it is not provided
-			shortUrl = shortUrl.isEmpty() ? reducer.reduceUrl(longUrl) : shortUrl;
-			// check is short URL already exist in DB
-			Link link = service.getByShortUrl(shortUrl);
-
-			// if custom short URL is in DB return conflict status
-			// return short URL if Link is already in DB for the same original URL
-			if (link != null)
-				return custom ? ResponseEntity.status(HttpStatus.CONFLICT).build() : ResponseEntity.ok(REDUCER_DOMAIN + shortUrl);
+			Link link;
+			// custom short URL already in DB is rejected by the unique index, see below
+			if (!custom)
+			{
+				// return short URL if Link is already in DB for the same original URL
+				link = service.getByLongUrl(longUrl);
+				if (link != null)
+					return ResponseEntity.ok(REDUCER_DOMAIN + link.getShortUrl());
+			}
 
 			// create link expiration date if it is not provided
 			// or set it to default 365 days (one year)
 			Calendar calendar = Calendar.getInstance();
 			calendar.add(Calendar.DATE, days == null ? DEFAULT_LIFE_SPAN : days);
-			// construct new entity
-			link = service.create(shortUrl, longUrl, new Date(), calendar.getTime(), 0);
+			// construct new entity, under a generated key unless custom
+			link = custom ? service.create(shortUrl, longUrl, new Date(), calendar.getTime(), 0)
+					: service.createGenerated(longUrl, new Date(), calendar.getTime());
+			if (link == null)
+				return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
 			// return URI of new resource just created
-			return ResponseEntity.ok(REDUCER_DOMAIN + shortUrl);
+			return ResponseEntity.ok(REDUCER_DOMAIN + link.getShortUrl());
+		}
+		catch (DuplicateKeyException e)
+		{
+			// custom short URL is taken, return conflict status
+			if (custom)
+				return ResponseEntity.status(HttpStatus.CONFLICT).build();
+			// every generated key attempted is taken
+			log.error(e.getMessage());
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
 		}
 		catch (Exception e)
 		{
@@ -70,21 +112,37 @@ public class LinkController
 		}
 	}
 
+	/************************************ 1a. CREATE SHORT URLS IN BULK *************************************/
+	// body is streamed, one long URL per line, results are streamed back line by line
+	@RequestMapping(path = "/create/batch", method = RequestMethod.POST)
+	public void createBatch(@RequestParam(defaultValue = LinkImportService.NDJSON) String format, @RequestParam(required = false) Integer days,
+			HttpServletRequest request, HttpServletResponse response)
+	{
+		try
+		{
+			response.setContentType(LinkImportService.CSV.equalsIgnoreCase(format) ? "text/csv" : "application/x-ndjson");
+			response.setCharacterEncoding("UTF-8");
+			// each new link is charged to the create budget, not just the request
+			LongSupplier budget = (LongSupplier) request.getAttribute(AdmissionFilter.BUDGET);
+			importService.importLinks(request.getInputStream(), response.getOutputStream(), format, days == null ? DEFAULT_LIFE_SPAN : days,
+					budget == null ? LinkImportService.UNLIMITED : budget);
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+			if (!response.isCommitted())
+				response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+	}
+
 	/************************************ 2. RETRIEVE ORIGINAL URL *******************************************/
 	@RequestMapping("/longurl/{shortUrl}")
 	public void retrieveLongUrl(@PathVariable String shortUrl, HttpServletResponse response)
 	{
 		try
 		{
-			Link link = service.getByShortUrl(shortUrl);
-
-			// todo: this should not update DB every time short link clicked
-			// it should be aggregated in memory,
-			// and then stored to DB as BULK update on some occasions, maybe on timer, or by capacity
-			updateClickCounters(shortUrl);
-
-			// immediately redirect to original long URL
-			response.sendRedirect(link.getLongUrl());
+			// usually answered by RedirectFilter, short URLs needing decoding come here
+			redirectService.redirect(shortUrl, response);
 		}
 		catch (Exception e)
 		{
@@ -98,8 +156,10 @@ public class LinkController
 	{
 		try
 		{
-			int counter = clickCounters.containsKey(shortUrl) ? (int) clickCounters.get(shortUrl) : 0;
-			Link link = service.getByShortUrl(shortUrl);
+			int counter = (int) clickStats.getPendingClicks(shortUrl);
+			Link link = service.getStats(shortUrl);
+			if (link == null)
+				return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
 			counter += link.getClicks();
 			// return 200 with numbers of clicks
 			return ResponseEntity.ok(counter);
@@ -112,52 +172,67 @@ public class LinkController
 		}
 	}
 
-	private void updateClickCounters(String shortUrl)
-	{
-		if (clickCounters.containsKey(shortUrl))
-			clickCounters.replace(shortUrl, (Integer) (clickCounters.get(shortUrl)) + 1);
-		else
-			clickCounters.put(shortUrl, 1);
-	}
-
-	// This scheduled task will read acquired in memory clicks
-	// and store them into DB once in 30 min
-	@Scheduled(fixedRate = 1800000)
-	private void storeClicks()
+	/************************************ 3a. RETRIEVE CLICK TIME SERIES *************************************/
+	// clicks per minute, hour or day from "from" to "to" (ISO date time), last 60 buckets by default
+	@RequestMapping(path = "/stats/{shortUrl}/timeseries", method = RequestMethod.GET)
+	public ResponseEntity<List<ClickCount>> retrieveTimeSeries(@PathVariable String shortUrl,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date to,
+			@RequestParam(defaultValue = "minute") String granularity)
 	{
-		int totalClicks = 0;
-
 		try
 		{
-			for (Object shortUrl : clickCounters.keySet())
-			{
-				int clicks = (Integer) clickCounters.get(shortUrl);
-				Link link = service.getByShortUrl(shortUrl.toString());
-				link.setClicks(link.getClicks() + clicks);
-				service.update(link);
-				totalClicks += clicks;
-			}
+			Granularity size = Granularity.parse(granularity);
+			if (to == null)
+				to = new Date();
+			if (from == null)
+				from = new Date(to.getTime() - 59 * size.getMillis());
+			if (service.getByShortUrl(shortUrl) == null)
+				return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+			return ResponseEntity.ok(clickStats.getTimeSeries(shortUrl, size, from, to));
+		}
+		catch (IllegalArgumentException e)
+		{
+			// unknown granularity or range too long
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
 		}
 		catch (Exception e)
 		{
 			log.error(e.getMessage());
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
 		}
+	}
 
-		log.debug(String.format("%d clicks for %d short URLs stored to DB.", totalClicks, clickCounters.size()));
-		//remove all stored clicls from memory
-		clickCounters.clear();
+	/************************************ 3b. RETRIEVE MOST CLICKED SHORT URLS ********************************/
+	// k short URLs most clicked in the last window ("30s", "5m", "1h"), clicks are estimates
+	@RequestMapping(path = "/stats/top", method = RequestMethod.GET)
+	public ResponseEntity<List<HotLink>> retrieveTop(@RequestParam(defaultValue = "10") int k, @RequestParam(defaultValue = "5m") String window)
+	{
+		try
+		{
+			return ResponseEntity.ok(heavyHitters.top(k, HeavyHitters.parseWindow(window)));
+		}
+		catch (IllegalArgumentException e)
+		{
+			// k or window out of range
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+		}
 	}
-	
-	
-	
+
 	/********************************* VARIOUS METHODS FOR DEVELOPMENT AND TESTING. ONE CAN SAFELY DELETE THEM *****************************/
 
+	// one page of links, next page starts after "next" id of this one
 	@RequestMapping(path = "/links", method = RequestMethod.GET)
-	private ResponseEntity<List<Link>> getAll()
+	private ResponseEntity<LinkPage> getAll(@RequestParam(required = false) String after, @RequestParam(defaultValue = "100") int size)
 	{
 		try
 		{
-			return ResponseEntity.ok(service.getAll());
+			return ResponseEntity.ok(exportService.getPage(after, size));
+		}
+		catch (IllegalArgumentException e)
+		{
+			// "after" is not a valid id
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
 		}
 		catch (Exception e)
 		{
@@ -166,6 +241,22 @@ public class LinkController
 		}
 	}
 
+	// all links streamed from DB cursor
+	@RequestMapping(path = "/links/export", method = RequestMethod.GET)
+	private void export(@RequestParam(defaultValue = LinkExportService.NDJSON) String format, HttpServletResponse response)
+	{
+		try
+		{
+			response.setContentType(LinkExportService.CSV.equalsIgnoreCase(format) ? "text/csv" : "application/x-ndjson");
+			response.setCharacterEncoding("UTF-8");
+			exportService.export(response.getOutputStream(), format);
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
 	@RequestMapping("/delete/{shorturl}")
 	public ResponseEntity<Boolean> delete(@PathVariable String shortUrl)
 	{
@@ -198,14 +289,23 @@ public class LinkController
 	}
 
 	// for testing only
+	// every link is charged to the create budget, 429 once it is used up
 	@RequestMapping("/init/{n}")
-	private void init(@PathVariable int n)
+	private void init(@PathVariable int n, HttpServletRequest request, HttpServletResponse response)
 	{
+		LongSupplier budget = (LongSupplier) request.getAttribute(AdmissionFilter.BUDGET);
 		String longUrl = "https://stackoverflow.com/questions/9375882/how-i-can-run-my-timertask-everyday-2-pm";
 		for (int i = 0; i < n; i++)
 		{
+			long wait = budget == null ? 0 : budget.getAsLong();
+			if (wait > 0)
+			{
+				response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+				response.setHeader("Retry-After", Long.toString(AdmissionFilter.retryAfter(wait)));
+				return;
+			}
 			String shortUrl = Utilities.getAlphaNumericString(8);
-			clickCounters.put(shortUrl, Utilities.getRandomInteger(10, 100));
+			clickCounters.add(shortUrl, Utilities.getRandomInteger(10, 100));
 			Date expiration = Utilities.getSpecificDate(2018, Utilities.getRandomInteger(11, 12), Utilities.getRandomInteger(1, 28), 
 					Utilities.getRandomInteger(1, 12), Utilities.getRandomInteger(1, 60), Utilities.getRandomInteger(1, 60));
 
@@ -213,11 +313,17 @@ public class LinkController
 		}
 	}
 
+	@RequestMapping(path = "/cachestats", method = RequestMethod.GET)
+	public ResponseEntity<Map<String, Long>> cacheStats()
+	{
+		return ResponseEntity.ok(service.getCacheStatistics());
+	}
+
 	// for testing only
 	@RequestMapping("/store")
 	private void store()
 	{
-		storeClicks();
+		clickFlusher.flush();
 	}
 	
 }
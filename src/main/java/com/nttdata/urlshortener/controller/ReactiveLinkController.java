@@ -0,0 +1,150 @@
+package com.nttdata.urlshortener.controller;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import com.nttdata.urlshortener.clicks.ClickCounterStore;
+import com.nttdata.urlshortener.clicks.ClickTimeSeries;
+import com.nttdata.urlshortener.clicks.HeavyHitters;
+import com.nttdata.urlshortener.model.HotLink;
+import com.nttdata.urlshortener.service.LinkService;
+import com.nttdata.urlshortener.service.ReactiveLinkService;
+
+import reactor.core.publisher.Mono;
+
+/**
+* Main endpoints served without blocking in reactive mode (profile "reactive").
+* Behavior is the same as in LinkController.
+*/
+@RestController
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveLinkController
+{
+	@Autowired
+	private ReactiveLinkService service;
+	// in-memory only operations (expiry) are shared with blocking service
+	@Autowired
+	private LinkService linkService;
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	@Autowired
+	private ClickCounterStore clickCounters;
+	@Autowired
+	private ClickTimeSeries clickSeries;
+	@Autowired
+	private HeavyHitters heavyHitters;
+	// 1 Year default link entry life span
+	private int DEFAULT_LIFE_SPAN = 365;
+	@Value("${urlshortener.domain:http://yz0101.com/}")
+	private String REDUCER_DOMAIN;
+
+	/************************************ 1. CREATE SHORT URL ************************************************/
+	@RequestMapping("/create")
+	public Mono<ResponseEntity<String>> create(@RequestParam String shortUrl, @RequestParam String longUrl, @RequestParam Integer days)
+	{
+		Mono<ResponseEntity<String>> result;
+		// custom short URL already in DB is rejected by the unique index
+		if (!shortUrl.isEmpty())
+			result = insert(shortUrl, longUrl, days);
+		else
+		{
+			// return short URL if Link is already in DB for the same original URL
+			result = service.getByLongUrl(longUrl)
+					.map(link -> ResponseEntity.ok(REDUCER_DOMAIN + link.getShortUrl()))
+					.switchIfEmpty(Mono.defer(() -> service.createGenerated(longUrl, new Date(), expiration(days))
+							.map(link -> ResponseEntity.ok(REDUCER_DOMAIN + link.getShortUrl()))
+							.defaultIfEmpty(ResponseEntity.status(HttpStatus.BAD_REQUEST).<String>build())
+							// every generated key attempted is taken
+							.onErrorResume(DuplicateKeyException.class, e ->
+							{
+								log.error(e.getMessage());
+								return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<String>build());
+							})));
+		}
+		return result
+				// custom short URL is taken
+				.onErrorResume(DuplicateKeyException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).<String>build()))
+				.onErrorResume(e ->
+				{
+					log.error(e.getMessage());
+					return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).<String>build());
+				});
+	}
+
+	private Mono<ResponseEntity<String>> insert(String shortUrl, String longUrl, Integer days)
+	{
+		return service.create(shortUrl, longUrl, new Date(), expiration(days), 0)
+				.map(link -> ResponseEntity.ok(REDUCER_DOMAIN + shortUrl));
+	}
+
+	private Date expiration(Integer days)
+	{
+		// create link expiration date if it is not provided
+		// or set it to default 365 days (one year)
+		Calendar calendar = Calendar.getInstance();
+		calendar.add(Calendar.DATE, days == null ? DEFAULT_LIFE_SPAN : days);
+		return calendar.getTime();
+	}
+
+	/************************************ 2. RETRIEVE ORIGINAL URL *******************************************/
+	@RequestMapping("/longurl/{shortUrl}")
+	public Mono<ResponseEntity<Void>> retrieveLongUrl(@PathVariable String shortUrl)
+	{
+		// expired links are known in memory
+		if (linkService.isGone(shortUrl))
+			return Mono.just(ResponseEntity.status(HttpStatus.GONE).<Void>build());
+
+		return service.getByShortUrl(shortUrl)
+				.map(link ->
+				{
+					if (link.isExpiredAt(System.currentTimeMillis()))
+					{
+						linkService.expire(link);
+						return ResponseEntity.status(HttpStatus.GONE).<Void>build();
+					}
+					clickCounters.increment(shortUrl);
+					clickSeries.record(shortUrl);
+					heavyHitters.record(shortUrl);
+					// immediately redirect to original long URL
+					return ResponseEntity.status(HttpStatus.FOUND).header(HttpHeaders.LOCATION, link.getLocation()).<Void>build();
+				})
+				.defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).<Void>build());
+	}
+
+	/************************************ 3. RETRIEVE STATS (CLICKS) *******************************************/
+	@RequestMapping(path = "/stats/{shortUrl}", method = RequestMethod.GET)
+	public Mono<ResponseEntity<Integer>> retrieveStats(@PathVariable String shortUrl)
+	{
+		return service.getStats(shortUrl)
+				.flatMap(link -> service.getPendingClicks(shortUrl).map(pending -> ResponseEntity.ok((int) (long) pending + link.getClicks())))
+				.defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).<Integer>build());
+	}
+
+	/************************************ 3b. RETRIEVE MOST CLICKED SHORT URLS ********************************/
+	@RequestMapping(path = "/stats/top", method = RequestMethod.GET)
+	public ResponseEntity<List<HotLink>> retrieveTop(@RequestParam(defaultValue = "10") int k, @RequestParam(defaultValue = "5m") String window)
+	{
+		try
+		{
+			return ResponseEntity.ok(heavyHitters.top(k, HeavyHitters.parseWindow(window)));
+		}
+		catch (IllegalArgumentException e)
+		{
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+	}
+}
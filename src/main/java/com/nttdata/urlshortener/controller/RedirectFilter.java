@@ -0,0 +1,95 @@
+package com.nttdata.urlshortener.controller;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nttdata.urlshortener.metrics.EndpointTimers;
+import com.nttdata.urlshortener.service.RedirectService;
+
+/**
+* This class answers /longurl/{shortUrl} ahead of the DispatcherServlet, so redirects skip
+* handler mapping, argument binding and sendRedirect URL resolution.
+* Short URL is cut straight from the request URI. URIs with percent-encoding, path parameters
+* or more segments are passed on to LinkController, which decodes them as usual.
+*/
+public class RedirectFilter implements Filter
+{
+	public static final String PATH = "/longurl/";
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private final RedirectService redirectService;
+	// same timers LinkController.retrieveLongUrl is timed with
+	private final EndpointTimers timers;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (redirectService) (answers redirects)
+	 * @param (timers) (latency timers of the redirect endpoint)
+	 */
+	public RedirectFilter(RedirectService redirectService, EndpointTimers timers)
+	{
+		this.redirectService = redirectService;
+		this.timers = timers;
+	}
+
+	@Override
+	public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException
+	{
+		HttpServletRequest request = (HttpServletRequest) servletRequest;
+		HttpServletResponse response = (HttpServletResponse) servletResponse;
+		String uri = request.getRequestURI();
+		int prefix = request.getContextPath().length();
+		int start = prefix + PATH.length();
+		if (uri.length() <= start || !uri.startsWith(PATH, prefix) || !isPlain(uri, start))
+		{
+			chain.doFilter(request, response);
+			return;
+		}
+
+		long begin = System.nanoTime();
+		try
+		{
+			redirectService.redirect(uri.substring(start), response);
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+		timers.record(response.getStatus(), System.nanoTime() - begin);
+	}
+
+	// true if the rest of the URI is the short URL as is
+	private static boolean isPlain(String uri, int start)
+	{
+		for (int i = start; i < uri.length(); i++)
+		{
+			char c = uri.charAt(i);
+			if (c == '/' || c == '%' || c == ';')
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig)
+	{
+	}
+
+	@Override
+	public void destroy()
+	{
+	}
+}
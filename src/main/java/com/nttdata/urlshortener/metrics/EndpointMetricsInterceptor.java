@@ -0,0 +1,68 @@
+package com.nttdata.urlshortener.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+* This class records latency of every endpoint of one controller
+* as a timer with percentile histogram, tagged by URI pattern and outcome.
+* Timers are looked up by handler method and start time is kept in a per thread
+* array, so recording a request allocates nothing once its timer exists.
+*/
+public class EndpointMetricsInterceptor extends HandlerInterceptorAdapter
+{
+	public static final String METRIC = EndpointTimers.METRIC;
+	// start time of the request being handled by this thread
+	private static final ThreadLocal<long[]> START = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final MeterRegistry registry;
+	private final Class<?> controllerType;
+	private final ConcurrentHashMap<Method, EndpointTimers> endpoints = new ConcurrentHashMap<Method, EndpointTimers>();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (registry) (registry timers are created in)
+	 * @param (controllerType) (only endpoints of this controller are timed)
+	 */
+	public EndpointMetricsInterceptor(MeterRegistry registry, Class<?> controllerType)
+	{
+		this.registry = registry;
+		this.controllerType = controllerType;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+	{
+		START.get()[0] = System.nanoTime();
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+	{
+		if (!(handler instanceof HandlerMethod) || ((HandlerMethod) handler).getBeanType() != controllerType)
+			return;
+		long elapsed = System.nanoTime() - START.get()[0];
+		Method method = ((HandlerMethod) handler).getMethod();
+		EndpointTimers endpoint = endpoints.get(method);
+		if (endpoint == null)
+			endpoint = endpoints.computeIfAbsent(method, key -> new EndpointTimers(registry, uri(request, key)));
+		endpoint.record(ex != null ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), elapsed);
+	}
+
+	private static String uri(HttpServletRequest request, Method method)
+	{
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		return pattern != null ? pattern.toString() : method.getName();
+	}
+}
@@ -0,0 +1,54 @@
+package com.nttdata.urlshortener.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+* This class holds the latency timers of one endpoint, one per outcome,
+* created on first request of each outcome.
+*/
+public final class EndpointTimers
+{
+	public static final String METRIC = "urlshortener.http.requests";
+	// index is HTTP status / 100 - 1
+	private static final String[] OUTCOMES = { "INFORMATIONAL", "SUCCESS", "REDIRECTION", "CLIENT_ERROR", "SERVER_ERROR" };
+
+	private final MeterRegistry registry;
+	private final String uri;
+	private final Timer[] timers = new Timer[OUTCOMES.length];
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (registry) (registry timers are created in)
+	 * @param (uri) (URI pattern of the endpoint)
+	 */
+	public EndpointTimers(MeterRegistry registry, String uri)
+	{
+		this.registry = registry;
+		this.uri = uri;
+	}
+
+	/**
+	 * @param (status) (HTTP status of the response)
+	 * @param (nanos) (latency)
+	 */
+	public void record(int status, long nanos)
+	{
+		int outcome = Math.min(Math.max(status / 100 - 1, 0), OUTCOMES.length - 1);
+		Timer timer = timers[outcome];
+		if (timer == null)
+		{
+			// registry returns the same timer to racing threads
+			timer = Timer.builder(METRIC)
+					.description("Latency of LinkController endpoints")
+					.tags("uri", uri, "outcome", OUTCOMES[outcome])
+					.publishPercentileHistogram()
+					.register(registry);
+			timers[outcome] = timer;
+		}
+		timer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+}
@@ -0,0 +1,65 @@
+package com.nttdata.urlshortener.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+* This class holds the success and error timer of one database operation, in the
+* metric RepositoryMetricsPostProcessor records repository calls in. Queries that
+* bypass the repository (lookups, bulk inserts) are timed with it by their callers.
+*/
+public final class RepositoryTimers
+{
+	private static final String[] OUTCOMES = { "success", "error" };
+
+	private final Timer[] timers = new Timer[OUTCOMES.length];
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (registry) (registry timers are created in)
+	 * @param (type) (class the operation belongs to)
+	 * @param (operation) (operation tag)
+	 */
+	public RepositoryTimers(MeterRegistry registry, Class<?> type, String operation)
+	{
+		for (int i = 0; i < timers.length; i++)
+			timers[i] = Timer.builder(RepositoryMetricsPostProcessor.METRIC)
+					.description("Latency of " + type.getSimpleName() + " operations")
+					.tags("operation", operation, "outcome", OUTCOMES[i])
+					.publishPercentileHistogram()
+					.register(registry);
+	}
+
+	/**
+	 * @param (nanos) (latency)
+	 * @param (success) (false if the operation failed)
+	 */
+	public void record(long nanos, boolean success)
+	{
+		timers[success ? 0 : 1].record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param (operation) (operation to run and time)
+	 * @return (result) (result of the operation)
+	 */
+	public <T> T record(Supplier<T> operation)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			T result = operation.get();
+			record(System.nanoTime() - start, true);
+			return result;
+		}
+		catch (RuntimeException e)
+		{
+			record(System.nanoTime() - start, false);
+			throw e;
+		}
+	}
+}
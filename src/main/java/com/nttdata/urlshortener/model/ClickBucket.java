@@ -0,0 +1,62 @@
+package com.nttdata.urlshortener.model;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+/**
+* Pre-aggregated clicks of one short URL: minutes of an hour, hours of a day
+* or days of a month, depending on granularity.
+* Counts are keyed by bucket offset from start, only buckets with clicks are present.
+*/
+@Document("click_buckets")
+@CompoundIndex(name = "ShortUrl_Granularity_Start", def = "{'ShortUrl': 1, 'Granularity': 1, 'Start': 1}", unique = true)
+public class ClickBucket
+{
+	@Id
+	private String id;
+	@Field("ShortUrl")
+	private String shortUrl;
+	@Field("Granularity")
+	private String granularity;
+	@Field("Start")
+	private Date start;
+	@Field("Counts")
+	private Map<String, Long> counts;
+	@Field("Total")
+	private Long total;
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public String getShortUrl()
+	{
+		return shortUrl;
+	}
+
+	public String getGranularity()
+	{
+		return granularity;
+	}
+
+	public Date getStart()
+	{
+		return start;
+	}
+
+	public Map<String, Long> getCounts()
+	{
+		return counts;
+	}
+
+	public Long getTotal()
+	{
+		return total;
+	}
+}
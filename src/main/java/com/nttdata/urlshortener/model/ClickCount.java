@@ -0,0 +1,28 @@
+package com.nttdata.urlshortener.model;
+
+import java.util.Date;
+
+/**
+* Clicks of one time bucket of a time series.
+*/
+public class ClickCount
+{
+	private Date time;
+	private long clicks;
+
+	public ClickCount(Date time, long clicks)
+	{
+		this.time = time;
+		this.clicks = clicks;
+	}
+
+	public Date getTime()
+	{
+		return time;
+	}
+
+	public long getClicks()
+	{
+		return clicks;
+	}
+}
@@ -0,0 +1,26 @@
+package com.nttdata.urlshortener.model;
+
+/**
+* Short URL among the most clicked ones, with estimated clicks in the window asked for.
+*/
+public class HotLink
+{
+	private String shortUrl;
+	private long clicks;
+
+	public HotLink(String shortUrl, long clicks)
+	{
+		this.shortUrl = shortUrl;
+		this.clicks = clicks;
+	}
+
+	public String getShortUrl()
+	{
+		return shortUrl;
+	}
+
+	public long getClicks()
+	{
+		return clicks;
+	}
+}
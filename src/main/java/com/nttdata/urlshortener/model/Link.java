@@ -6,12 +6,16 @@ import java.util.Objects;
 import java.util.UUID;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.format.annotation.DateTimeFormat.ISO;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
 @Document("links")
 public class Link implements Serializable
 {
@@ -23,14 +27,30 @@ public class Link implements Serializable
 	private String shortUrl;
 	@Field("LongUrl")
 	private String longUrl;
+	// fixed width hash of cleaned long URL, used to find already shortened URLs
+	@Field("LongUrlHash")
+	@Indexed
+	private Long longUrlHash;
+	// long URL hash of generated links only, unique: a long URL has one generated link
+	@Field("GeneratedUrlHash")
+	@Indexed(unique = true, sparse = true)
+	private Long generatedUrlHash;
 	@Field("Created")
 	@DateTimeFormat(iso = ISO.DATE_TIME)
 	private Date created;
 	@DateTimeFormat(iso = ISO.DATE_TIME)
 	@Field("Expiration")
+	// MongoDB removes the document once expiration date has passed
+	@Indexed(expireAfterSeconds = 0)
 	private Date expiration;
 	@Field("Clicks")
 	private Integer clicks;
+	// long URL encoded for the Location header, computed on first redirect
+	@Transient
+	private transient String location;
+	// decoded from the redirect projection, created date, hash and clicks are missing
+	@Transient
+	private transient boolean projected;
 	
 	public Link()
 	{		
@@ -90,6 +110,60 @@ public class Link implements Serializable
 	public void setLongUrl(String longUrl)
 	{
 		this.longUrl = longUrl;
+		this.location = null;
+	}
+
+
+	/**
+	 * @return (location) (long URL as Location header value, encoded once per link)
+	 */
+	@JsonIgnore
+	public String getLocation()
+	{
+		String encoded = location;
+		if (encoded == null && longUrl != null)
+			location = encoded = UrlReducer.toLocation(longUrl);
+		return encoded;
+	}
+
+
+	/**
+	 * @return (true if link holds the redirect fields only and must not be saved or shown as a whole)
+	 */
+	@JsonIgnore
+	public boolean isProjected()
+	{
+		return projected;
+	}
+
+
+	public void setProjected(boolean projected)
+	{
+		this.projected = projected;
+	}
+
+
+	public Long getLongUrlHash()
+	{
+		return longUrlHash;
+	}
+
+
+	public void setLongUrlHash(Long longUrlHash)
+	{
+		this.longUrlHash = longUrlHash;
+	}
+
+
+	public Long getGeneratedUrlHash()
+	{
+		return generatedUrlHash;
+	}
+
+
+	public void setGeneratedUrlHash(Long generatedUrlHash)
+	{
+		this.generatedUrlHash = generatedUrlHash;
 	}
 
 
@@ -117,6 +191,16 @@ public class Link implements Serializable
 	}
 
 
+	/**
+	 * @param (millis) (point in time)
+	 * @return (true if link is expired at that time)
+	 */
+	public boolean isExpiredAt(long millis)
+	{
+		return expiration != null && expiration.getTime() <= millis;
+	}
+
+
 	public Integer getClicks()
 	{
 		return clicks;
@@ -0,0 +1,29 @@
+package com.nttdata.urlshortener.model;
+
+import java.util.List;
+
+/**
+* One page of links ordered by id.
+* Next page starts after the id in "next", which is null on the last page.
+*/
+public class LinkPage
+{
+	private List<Link> items;
+	private String next;
+
+	public LinkPage(List<Link> items, String next)
+	{
+		this.items = items;
+		this.next = next;
+	}
+
+	public List<Link> getItems()
+	{
+		return items;
+	}
+
+	public String getNext()
+	{
+		return next;
+	}
+}
@@ -1,5 +1,8 @@
 package com.nttdata.urlshortener.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -10,5 +13,9 @@ import com.nttdata.urlshortener.model.Link;
 public interface ILinkRepository extends MongoRepository<Link, String>
 {
 	public Link findByShortUrl(String shortUrl);
+	public List<Link> findByShortUrlIn(Collection<String> shortUrls);
 	public Link findByLongUrl(String shortUrl);
+	public List<Link> findByLongUrlHash(Long longUrlHash);
+	public List<Link> findByLongUrlHashIn(Collection<Long> longUrlHashes);
+	public Link findByGeneratedUrlHash(Long generatedUrlHash);
 }
@@ -0,0 +1,21 @@
+package com.nttdata.urlshortener.repository;
+
+import java.util.Collection;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.nttdata.urlshortener.model.Link;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+
+@Repository
+public interface IReactiveLinkRepository extends ReactiveMongoRepository<Link, String>
+{
+	public Mono<Link> findByShortUrl(String shortUrl);
+	public Flux<Link> findByShortUrlIn(Collection<String> shortUrls);
+	public Flux<Link> findByLongUrlHash(Long longUrlHash);
+	public Mono<Link> findByGeneratedUrlHash(Long generatedUrlHash);
+}
@@ -0,0 +1,122 @@
+package com.nttdata.urlshortener.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Projections;
+import com.nttdata.urlshortener.metrics.RepositoryTimers;
+import com.nttdata.urlshortener.model.Link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+* This class finds links for redirects by short URL, fetching only id, long URL and expiration.
+* Documents are decoded by LinkLookupCodec, so a lookup creates the Link and its strings only.
+* With the covering index the query is answered from the index alone, without reading the document.
+* The index holds long URLs, MongoDB before 4.2 refuses to index keys over 1024 bytes,
+* so it is created only when enabled.
+* Lookups bypass ILinkRepository, they are timed here as operations lookup and lookupBatch.
+*/
+@Component
+public class LinkLookup
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	static final String COLLECTION = "links";
+	static final Document COVERING_INDEX = new Document(LinkLookupCodec.SHORT_URL, 1)
+			.append(LinkLookupCodec.EXPIRATION, 1)
+			.append(LinkLookupCodec.LONG_URL, 1)
+			.append(LinkLookupCodec.ID, 1);
+	static final Bson PROJECTION = Projections.include(LinkLookupCodec.ID, LinkLookupCodec.SHORT_URL, LinkLookupCodec.LONG_URL,
+			LinkLookupCodec.EXPIRATION);
+	static final CodecRegistry CODECS = CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(new LinkLookupCodec()),
+			MongoClient.getDefaultCodecRegistry());
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private MeterRegistry registry;
+	@Value("${urlshortener.lookup.covering-index:false}")
+	private boolean coveringIndex;
+	private MongoCollection<Link> collection;
+	private RepositoryTimers lookupTimers;
+	private RepositoryTimers lookupBatchTimers;
+	// true once the covering index exists, lookups are hinted to it
+	private volatile boolean covered;
+
+	@PostConstruct
+	private void init()
+	{
+		collection = mongoTemplate.getCollection(COLLECTION)
+				.withDocumentClass(Link.class)
+				.withCodecRegistry(CODECS);
+		lookupTimers = new RepositoryTimers(registry, LinkLookup.class, "lookup");
+		lookupBatchTimers = new RepositoryTimers(registry, LinkLookup.class, "lookupBatch");
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void createIndex()
+	{
+		if (!coveringIndex)
+			return;
+		try
+		{
+			mongoTemplate.getCollection(COLLECTION).createIndex(COVERING_INDEX, new IndexOptions().name("ShortUrl_lookup").background(true));
+			covered = true;
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	// true once lookups are hinted to the covering index
+	boolean isCovered()
+	{
+		return covered;
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (link) (link with id, short URL, long URL and expiration only, null if not found)
+	 */
+	public Link findByShortUrl(String shortUrl)
+	{
+		FindIterable<Link> found = collection.find(Filters.eq(LinkLookupCodec.SHORT_URL, shortUrl)).projection(PROJECTION).limit(1);
+		if (covered)
+			found.hint(COVERING_INDEX);
+		return lookupTimers.record(found::first);
+	}
+
+	/**
+	 * @param (shortUrls) (short URLs)
+	 * @return (links) (links found, with id, short URL, long URL and expiration only)
+	 */
+	public List<Link> findByShortUrlIn(Collection<String> shortUrls)
+	{
+		FindIterable<Link> found = collection.find(Filters.in(LinkLookupCodec.SHORT_URL, shortUrls)).projection(PROJECTION);
+		if (covered)
+			found.hint(COVERING_INDEX);
+		return lookupBatchTimers.record(() -> found.into(new ArrayList<Link>(shortUrls.size())));
+	}
+}
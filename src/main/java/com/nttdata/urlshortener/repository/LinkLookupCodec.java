@@ -0,0 +1,101 @@
+package com.nttdata.urlshortener.repository;
+
+import java.util.Date;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import com.nttdata.urlshortener.model.Link;
+
+/**
+* This class decodes the fields a redirect needs straight from BSON into a Link,
+* without the reflective mapping of Spring Data and without an intermediate Document.
+* Other fields are skipped, links decoded here have no created date, hash or clicks
+* and are marked projected, so they are never saved or returned as whole entities.
+* Encoding writes the same fields in the same types as Spring Data does, so it yields a
+* projected document; links are still stored through the repository.
+*/
+public class LinkLookupCodec implements Codec<Link>
+{
+	public static final String ID = "_id";
+	public static final String SHORT_URL = "ShortUrl";
+	public static final String LONG_URL = "LongUrl";
+	public static final String EXPIRATION = "Expiration";
+
+	@Override
+	public Link decode(BsonReader reader, DecoderContext context)
+	{
+		Link link = new Link();
+		link.setProjected(true);
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+		{
+			switch (reader.readName())
+			{
+			case ID:
+				if (reader.getCurrentBsonType() == BsonType.OBJECT_ID)
+					link.setId(reader.readObjectId().toHexString());
+				else
+					link.setId(readString(reader));
+				break;
+			case SHORT_URL:
+				link.setShortUrl(readString(reader));
+				break;
+			case LONG_URL:
+				link.setLongUrl(readString(reader));
+				break;
+			case EXPIRATION:
+				if (reader.getCurrentBsonType() == BsonType.DATE_TIME)
+					link.setExpiration(new Date(reader.readDateTime()));
+				else
+					reader.skipValue();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.readEndDocument();
+		return link;
+	}
+
+	// null for null or other types than string
+	private static String readString(BsonReader reader)
+	{
+		if (reader.getCurrentBsonType() == BsonType.STRING)
+			return reader.readString();
+		reader.skipValue();
+		return null;
+	}
+
+	@Override
+	public void encode(BsonWriter writer, Link link, EncoderContext context)
+	{
+		writer.writeStartDocument();
+		// Spring Data stores string ids that are valid ObjectIds as ObjectId
+		if (link.getId() != null)
+		{
+			if (ObjectId.isValid(link.getId()))
+				writer.writeObjectId(ID, new ObjectId(link.getId()));
+			else
+				writer.writeString(ID, link.getId());
+		}
+		if (link.getShortUrl() != null)
+			writer.writeString(SHORT_URL, link.getShortUrl());
+		if (link.getLongUrl() != null)
+			writer.writeString(LONG_URL, link.getLongUrl());
+		if (link.getExpiration() != null)
+			writer.writeDateTime(EXPIRATION, link.getExpiration().getTime());
+		writer.writeEndDocument();
+	}
+
+	@Override
+	public Class<Link> getEncoderClass()
+	{
+		return Link.class;
+	}
+}
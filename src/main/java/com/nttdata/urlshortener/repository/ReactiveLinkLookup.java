@@ -0,0 +1,68 @@
+package com.nttdata.urlshortener.repository;
+
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.nttdata.urlshortener.metrics.RepositoryTimers;
+import com.nttdata.urlshortener.model.Link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import reactor.core.publisher.Flux;
+
+/**
+* Reactive counterpart of LinkLookup for reactive serving mode: same projection, codec
+* and covering index, but the query runs on the reactive driver, no thread waits for it.
+* Lookups are timed here as operation lookupBatch.
+*/
+@Component
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveLinkLookup
+{
+	@Autowired
+	private ReactiveMongoTemplate reactiveMongoTemplate;
+	// creates the covering index, if enabled
+	@Autowired
+	private LinkLookup lookup;
+	@Autowired
+	private MeterRegistry registry;
+	private MongoCollection<Link> collection;
+	private RepositoryTimers lookupBatchTimers;
+
+	@PostConstruct
+	private void init()
+	{
+		collection = reactiveMongoTemplate.getCollection(LinkLookup.COLLECTION)
+				.withDocumentClass(Link.class)
+				.withCodecRegistry(LinkLookup.CODECS);
+		lookupBatchTimers = new RepositoryTimers(registry, ReactiveLinkLookup.class, "lookupBatch");
+	}
+
+	/**
+	 * @param (shortUrls) (short URLs)
+	 * @return (links) (links found, with id, short URL, long URL and expiration only)
+	 */
+	public Flux<Link> findByShortUrlIn(Collection<String> shortUrls)
+	{
+		return Flux.defer(() ->
+		{
+			FindPublisher<Link> found = collection.find(Filters.in(LinkLookupCodec.SHORT_URL, shortUrls)).projection(LinkLookup.PROJECTION);
+			if (lookup.isCovered())
+				found.hint(LinkLookup.COVERING_INDEX);
+			long start = System.nanoTime();
+			return Flux.from(found)
+					.doOnComplete(() -> lookupBatchTimers.record(System.nanoTime() - start, true))
+					.doOnError(e -> lookupBatchTimers.record(System.nanoTime() - start, false));
+		});
+	}
+}
@@ -0,0 +1,97 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.nttdata.urlshortener.clicks.ClickCounterStore;
+import com.nttdata.urlshortener.clicks.ClickTimeSeries;
+import com.nttdata.urlshortener.clicks.ClickTimeSeries.Series;
+import com.nttdata.urlshortener.clicks.Granularity;
+import com.nttdata.urlshortener.clicks.PendingClicksExchange;
+import com.nttdata.urlshortener.model.ClickBucket;
+import com.nttdata.urlshortener.model.ClickCount;
+
+/**
+* This class answers click totals and time series of a short URL.
+* Stored click buckets are read by index (short URL, granularity, start),
+* clicks not stored yet are added from memory, raw clicks are never scanned.
+*/
+@Service
+public class ClickStatsService
+{
+	// max number of buckets in one answer
+	public static final int MAX_POINTS = 10000;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private ClickTimeSeries clickSeries;
+	@Autowired
+	private ClickCounterStore clickCounters;
+	@Autowired
+	private PendingClicksExchange pendingClicks;
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (clicks) (clicks not stored to DB yet, counted by this and other nodes)
+	 */
+	public long getPendingClicks(String shortUrl)
+	{
+		return clickCounters.pending(shortUrl) + pendingClicks.pendingElsewhere(shortUrl);
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @param (granularity) (bucket size)
+	 * @param (from) (first bucket holds this time)
+	 * @param (to) (last bucket holds this time)
+	 * @return (series) (clicks of every bucket from first to last, zero when there were none)
+	 */
+	public List<ClickCount> getTimeSeries(String shortUrl, Granularity granularity, Date from, Date to)
+	{
+		long unit = granularity.getMillis();
+		long first = granularity.floor(from.getTime());
+		long last = granularity.floor(to.getTime());
+		if (last < first)
+			throw new IllegalArgumentException("from is after to");
+		if ((last - first) / unit >= MAX_POINTS)
+			throw new IllegalArgumentException("too many " + granularity.name().toLowerCase() + "s, max is " + MAX_POINTS);
+		long[] clicks = new long[(int) ((last - first) / unit) + 1];
+
+		Query query = new Query(Criteria.where("shortUrl").is(shortUrl)
+				.and("granularity").is(granularity.name())
+				.and("start").gte(new Date(granularity.documentStart(first))).lte(new Date(last)));
+		for (ClickBucket bucket : mongoTemplate.find(query, ClickBucket.class))
+		{
+			long start = bucket.getStart().getTime();
+			for (Map.Entry<String, Long> count : bucket.getCounts().entrySet())
+				add(clicks, first, unit, start + Integer.parseInt(count.getKey()) * unit, count.getValue());
+		}
+
+		Series tail = clickSeries.tail(shortUrl);
+		for (int i = 0; i < tail.size(); i++)
+			add(clicks, first, unit, granularity.floor(tail.time(i)), tail.clicks(i));
+
+		List<ClickCount> series = new ArrayList<ClickCount>(clicks.length);
+		for (int i = 0; i < clicks.length; i++)
+			series.add(new ClickCount(new Date(first + i * unit), clicks[i]));
+		return series;
+	}
+
+	private static void add(long[] clicks, long first, long unit, long time, long count)
+	{
+		if (time < first)
+			return;
+		long index = (time - first) / unit;
+		if (index < clicks.length)
+			clicks[(int) index] += count;
+	}
+}
@@ -0,0 +1,116 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.utilities.TimingWheel;
+
+/**
+* This class enforces link expiration in memory.
+* Links held by in-memory structures are put on a timing wheel, listeners evict
+* them when they expire; expired short URLs are remembered as gone,
+* so they are answered with 410 without a DB query.
+* Expired documents are removed from DB by the TTL index on Link.expiration.
+*/
+@Component
+public class ExpiryManager
+{
+	private final TimingWheel<Link> wheel;
+	// short URLs known to be expired
+	private final Cache<String, Boolean> gone;
+	// called with every tracked link at its expiration
+	private final List<Consumer<Link>> listeners = new CopyOnWriteArrayList<Consumer<Link>>();
+	// links expiring later are reloaded by the cache before, no need to track them
+	private final long horizonMillis;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (tickMillis) (timing wheel resolution)
+	 * @param (horizonSeconds) (max lifetime of an in-memory copy of a link)
+	 * @param (goneMaximumSize) (max number of remembered expired short URLs)
+	 */
+	public ExpiryManager(@Value("${urlshortener.expiry.tick-ms:1000}") long tickMillis,
+			@Value("${urlshortener.cache.ttl-seconds:600}") long horizonSeconds,
+			@Value("${urlshortener.expiry.gone-maximum-size:100000}") long goneMaximumSize)
+	{
+		this.wheel = new TimingWheel<Link>(tickMillis, 4, System.currentTimeMillis());
+		this.horizonMillis = TimeUnit.SECONDS.toMillis(horizonSeconds);
+		this.gone = Caffeine.newBuilder().maximumSize(goneMaximumSize).expireAfterWrite(1, TimeUnit.DAYS).build();
+	}
+
+	/**
+	 * Listener receives the tracked instance, it may have been replaced by
+	 * a newer copy with different expiration meanwhile.
+	 *
+	 * @param (listener) (callback run on scheduler thread)
+	 */
+	public void addListener(Consumer<Link> listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * This method schedules eviction of a link just put into memory.
+	 *
+	 * @param (link) (link held in memory)
+	 */
+	public void track(Link link)
+	{
+		if (link.getExpiration() == null)
+			return;
+		long expiration = link.getExpiration().getTime();
+		if (expiration - System.currentTimeMillis() <= horizonMillis)
+			wheel.schedule(link, expiration);
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (true if short URL is known to be expired)
+	 */
+	public boolean isGone(String shortUrl)
+	{
+		return gone.getIfPresent(shortUrl) != null;
+	}
+
+	/**
+	 * This method records a short URL found expired.
+	 *
+	 * @param (shortUrl) (expired short URL)
+	 */
+	public void markGone(String shortUrl)
+	{
+		gone.put(shortUrl, Boolean.TRUE);
+	}
+
+	/**
+	 * This method forgets a short URL, i.e. when it is created again or its expiration changes.
+	 *
+	 * @param (shortUrl) (short URL)
+	 */
+	public void revive(String shortUrl)
+	{
+		gone.invalidate(shortUrl);
+	}
+
+	@Scheduled(fixedRateString = "${urlshortener.expiry.tick-ms:1000}")
+	public void tick()
+	{
+		wheel.advance(System.currentTimeMillis(), this::expired);
+	}
+
+	private void expired(Link link)
+	{
+		for (Consumer<Link> listener : listeners)
+			listener.accept(link);
+	}
+}
@@ -0,0 +1,114 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.nttdata.urlshortener.clicks.HeavyHitters;
+import com.nttdata.urlshortener.model.HotLink;
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.repository.ILinkRepository;
+
+/**
+* This class keeps the hottest short URLs pinned in LinkCache and stored in DB,
+* so a restarted node (or any other node) loads them into its cache before the first click.
+*/
+@Service
+public class HotLinkService
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final String COLLECTION = "hot_links";
+	private static final String HOT_LIST_ID = "links";
+	private static final String SHORT_URLS = "ShortUrls";
+
+	@Autowired
+	private HeavyHitters heavyHitters;
+	@Autowired
+	private LinkCache cache;
+	@Autowired
+	private ILinkRepository repository;
+	@Autowired
+	private ExpiryManager expiryManager;
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	// number of short URLs pinned and stored
+	@Value("${urlshortener.hot.pinned:100}")
+	private int pinned;
+	// clicks of this window decide which short URLs are hot
+	@Value("${urlshortener.hot.pin-window-seconds:600}")
+	private long pinWindowSeconds;
+
+	/**
+	 * This method loads links of the stored hot list into cache and pins them.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void preload()
+	{
+		try
+		{
+			Document hotList = mongoTemplate.findById(HOT_LIST_ID, Document.class, COLLECTION);
+			if (hotList == null)
+				return;
+			@SuppressWarnings("unchecked")
+			List<String> shortUrls = (List<String>) hotList.get(SHORT_URLS);
+			// pinned first, so links weigh nothing when they are put
+			cache.pin(shortUrls);
+			long now = System.currentTimeMillis();
+			int loaded = 0;
+			for (Link link : repository.findByShortUrlIn(shortUrls))
+				if (!link.isExpiredAt(now))
+				{
+					cache.put(link);
+					expiryManager.track(link);
+					loaded++;
+				}
+			log.info(String.format("%d hot links preloaded to cache.", loaded));
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * This method pins short URLs most clicked recently and stores their list.
+	 * Nothing changes while there are no clicks yet, i.e. right after restart.
+	 */
+	@Scheduled(fixedDelayString = "${urlshortener.hot.pin-interval-ms:60000}", initialDelayString = "${urlshortener.hot.pin-interval-ms:60000}")
+	@PreDestroy
+	public void refresh()
+	{
+		try
+		{
+			List<HotLink> top = heavyHitters.top(pinned, pinWindowSeconds * 1000);
+			if (top.isEmpty())
+				return;
+			List<String> shortUrls = new ArrayList<String>(top.size());
+			for (HotLink hotLink : top)
+				shortUrls.add(hotLink.getShortUrl());
+			cache.pin(shortUrls);
+			Update update = new Update().set(SHORT_URLS, shortUrls).set("Updated", new Date());
+			mongoTemplate.upsert(new Query(Criteria.where("_id").is(HOT_LIST_ID)), update, COLLECTION);
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+}
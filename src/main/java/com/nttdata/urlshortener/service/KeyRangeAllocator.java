@@ -0,0 +1,106 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.function.LongSupplier;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+* This class hands out unique sequence numbers for short URL keys.
+* Numbers are leased in blocks from a counter document in DB,
+* so every node gets its own range and no two nodes hand out the same key.
+* Custom short URLs may hold a key a number encodes to, the number is then skipped (see LinkService.createGenerated).
+*/
+@Component
+public class KeyRangeAllocator implements LongSupplier
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	// largest number encoded in UrlReducer.MAX_GENERATED_LENGTH characters
+	public static final long MAX_SEQUENCE = 3521614606207L; // 62^7 - 1
+	private static final String COLLECTION = "counters";
+	private static final String COUNTER_ID = "links";
+	private static final String SEQUENCE = "Sequence";
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	// numbers leased at once
+	@Value("${urlshortener.keys.block-size:1000}")
+	private int blockSize;
+	// next number to hand out and end of leased range (exclusive)
+	private long next;
+	private long end;
+
+	/**
+	 * @return (sequence) (next unique number)
+	 */
+	@Override
+	public synchronized long getAsLong()
+	{
+		if (next >= end)
+			lease();
+		return next++;
+	}
+
+	/**
+	 * @return (sequence) (highest number leased by any node, 0 if none)
+	 */
+	public long leased()
+	{
+		Document counter = mongoTemplate.findById(COUNTER_ID, Document.class, COLLECTION);
+		return counter == null ? 0 : ((Number) counter.get(SEQUENCE)).longValue();
+	}
+
+	/**
+	 * This method hands the rest of the leased range over, i.e. to a snapshot written on shutdown.
+	 * Next number is leased from DB again.
+	 *
+	 * @return (range) (next unused number and end of range, exclusive)
+	 */
+	public synchronized long[] release()
+	{
+		long[] range = { next, end };
+		next = end;
+		return range;
+	}
+
+	/**
+	 * This method takes over a range released by the previous run, unless a range is leased already.
+	 *
+	 * @param (next) (next unused number)
+	 * @param (end) (end of range, exclusive)
+	 */
+	public synchronized void restore(long next, long end)
+	{
+		if (this.next >= this.end && next < end)
+		{
+			this.next = next;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * This method atomically moves the counter in DB forward by one block.
+	 */
+	private void lease()
+	{
+		Query query = new Query(Criteria.where("_id").is(COUNTER_ID));
+		Update update = new Update().inc(SEQUENCE, (long) blockSize);
+		Document counter = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true).upsert(true), Document.class, COLLECTION);
+		long leasedEnd = ((Number) counter.get(SEQUENCE)).longValue();
+		if (leasedEnd > MAX_SEQUENCE)
+			throw new IllegalStateException("Short URL key space exhausted");
+		// sequence starts from 1, numbers of the block are (leasedEnd - blockSize, leasedEnd]
+		next = leasedEnd - blockSize + 1;
+		end = leasedEnd + 1;
+		log.debug(String.format("Leased keys %d - %d.", next, leasedEnd));
+	}
+}
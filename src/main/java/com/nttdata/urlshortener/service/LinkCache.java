@@ -0,0 +1,191 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.nttdata.urlshortener.model.Link;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+* This class keeps recently resolved links in memory, so hot short URLs
+* are redirected without a MongoDB round trip.
+* Caffeine evicts by frequency (W-TinyLFU), unknown short URLs are remembered
+* for a short time as well, so repeated misses do not reach the database either.
+* The hottest short URLs (see HotLinkService) can be pinned: they weigh nothing,
+* so a burst of one-off lookups never evicts them; they still expire after ttl.
+*/
+@Component
+public class LinkCache implements MeterBinder
+{
+	// short URL -> link, bounded by total weight, 1 per link, 0 per pinned link
+	private final Cache<String, Link> links;
+	// short URLs never evicted for size, weight is computed when entry is written
+	private volatile Set<String> pinned = Collections.emptySet();
+	// short URLs known to be absent in DB
+	private final Cache<String, Boolean> misses;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (maximumSize) (max number of cached links)
+	 * @param (ttlSeconds) (how long a cached link may stay unchanged, bounds staleness)
+	 * @param (missMaximumSize) (max number of remembered unknown short URLs)
+	 * @param (missTtlSeconds) (how long an unknown short URL is remembered)
+	 */
+	public LinkCache(@Value("${urlshortener.cache.maximum-size:100000}") long maximumSize,
+			@Value("${urlshortener.cache.ttl-seconds:600}") long ttlSeconds,
+			@Value("${urlshortener.cache.miss-maximum-size:100000}") long missMaximumSize,
+			@Value("${urlshortener.cache.miss-ttl-seconds:60}") long missTtlSeconds)
+	{
+		links = Caffeine.newBuilder()
+				.maximumWeight(maximumSize)
+				.weigher((String shortUrl, Link link) -> pinned.contains(shortUrl) ? 0 : 1)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+		misses = Caffeine.newBuilder()
+				.maximumSize(missMaximumSize)
+				.expireAfterWrite(missTtlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * @param (shortUrl) (short URL key)
+	 * @return (link) (cached link, or null if not cached)
+	 */
+	public Link get(String shortUrl)
+	{
+		return links.getIfPresent(shortUrl);
+	}
+
+	/**
+	 * @param (shortUrl) (short URL key)
+	 * @return (true if short URL was recently looked up and not found in DB)
+	 */
+	public boolean isKnownMiss(String shortUrl)
+	{
+		return misses.getIfPresent(shortUrl) != null;
+	}
+
+	public void put(Link link)
+	{
+		links.put(link.getShortUrl(), link);
+	}
+
+	public void putMiss(String shortUrl)
+	{
+		misses.put(shortUrl, Boolean.TRUE);
+	}
+
+	/**
+	 * This method drops both positive and negative entries for the short URL.
+	 * Must be called whenever the link is created, changed or removed.
+	 *
+	 * @param (shortUrl) (short URL key)
+	 */
+	public void invalidate(String shortUrl)
+	{
+		links.invalidate(shortUrl);
+		misses.invalidate(shortUrl);
+	}
+
+	/**
+	 * @param (limit) (max number of links)
+	 * @return (links) (cached links most likely to be used again, hottest first)
+	 */
+	public Collection<Link> hottest(int limit)
+	{
+		return links.policy().eviction().map(eviction -> eviction.hottest(limit).values()).orElse(Collections.<Link>emptyList());
+	}
+
+	/**
+	 * This method drops cached links by DB id, i.e. deleted on another node.
+	 * It scans the whole cache, so ids should be collected and passed at once.
+	 *
+	 * @param (ids) (ids of links)
+	 */
+	public void invalidateIds(Set<String> ids)
+	{
+		links.asMap().values().removeIf(link -> ids.contains(link.getId()));
+	}
+
+	/**
+	 * This method replaces the set of pinned short URLs.
+	 * Cached links entering or leaving the set are written again, so their weight changes;
+	 * links not cached yet are pinned once they are put.
+	 *
+	 * @param (shortUrls) (short URLs to pin, the set should stay small)
+	 */
+	public synchronized void pin(Collection<String> shortUrls)
+	{
+		Set<String> previous = pinned;
+		Set<String> next = new HashSet<String>(shortUrls);
+		pinned = next;
+		for (String shortUrl : previous)
+			if (!next.contains(shortUrl))
+				reweigh(shortUrl);
+		for (String shortUrl : next)
+			if (!previous.contains(shortUrl))
+				reweigh(shortUrl);
+	}
+
+	private void reweigh(String shortUrl)
+	{
+		// map view does not count as cache hit
+		Link link = links.asMap().get(shortUrl);
+		// conditional, link invalidated meanwhile is not put back
+		if (link != null)
+			links.asMap().replace(shortUrl, link, link);
+	}
+
+	public void invalidateAll()
+	{
+		links.invalidateAll();
+		misses.invalidateAll();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		CaffeineCacheMetrics.monitor(registry, links, "links");
+		CaffeineCacheMetrics.monitor(registry, misses, "misses");
+		Gauge.builder("urlshortener.cache.hit.ratio", links, cache -> cache.stats().hitRate())
+				.description("Share of redirect lookups answered by the cache")
+				.register(registry);
+	}
+
+	/**
+	 * @return (statistics) (hit/miss/eviction counters of both caches, used for sizing)
+	 */
+	public Map<String, Long> statistics()
+	{
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		CacheStats stats = links.stats();
+		statistics.put("size", links.estimatedSize());
+		statistics.put("hits", stats.hitCount());
+		statistics.put("misses", stats.missCount());
+		statistics.put("evictions", stats.evictionCount());
+		statistics.put("pinned", (long) pinned.size());
+		stats = this.misses.stats();
+		statistics.put("negativeSize", this.misses.estimatedSize());
+		statistics.put("negativeHits", stats.hitCount());
+		statistics.put("negativeEvictions", stats.evictionCount());
+		return statistics;
+	}
+}
@@ -0,0 +1,152 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.PreDestroy;
+
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.nttdata.urlshortener.model.Link;
+
+/**
+* This class keeps in memory lookup structures of this node coherent with links
+* created, changed or deleted by other nodes, by tailing a change stream of "links".
+* Change streams need a replica set (a single node one is enough), so it is off by default.
+* Click increments are filtered out by the server, they do not change anything cached.
+* Deletes carry only the DB id, they are collected and applied to the cache in one scan per second.
+* If the stream breaks, events may be missed: the cache is dropped and the stream opened again.
+*/
+@Component
+public class LinkChangeListener
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final String COLLECTION = "links";
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private LinkService service;
+	@Autowired
+	private LinkCache cache;
+	@Value("${urlshortener.coherence.enabled:false}")
+	private boolean enabled;
+	private DefaultMessageListenerContainer container;
+	private Subscription subscription;
+	// true once the current subscription was seen running
+	private boolean active;
+	// ids of deleted links not applied to cache yet, guarded by itself
+	private final Set<String> deleted = new HashSet<String>();
+
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start()
+	{
+		if (!enabled)
+			return;
+		container = new DefaultMessageListenerContainer(mongoTemplate);
+		container.start();
+		subscribe();
+	}
+
+	@PreDestroy
+	public synchronized void stop()
+	{
+		if (container != null)
+			container.stop();
+	}
+
+	private void subscribe()
+	{
+		// updates of other fields than Clicks, all other operations
+		Document match = new Document("$match", new Document("$or", Arrays.asList(
+				new Document("operationType", new Document("$ne", "update")),
+				new Document("updateDescription.updatedFields.Clicks", new Document("$exists", false)))));
+		ChangeStreamRequest<Link> request = ChangeStreamRequest.builder(this::onChange)
+				.collection(COLLECTION)
+				.filter(match)
+				.fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+				.build();
+		subscription = container.register(request, Link.class, e -> log.error(e.getMessage()));
+		active = false;
+	}
+
+	/**
+	 * This method opens the stream again if it stopped, i.e. on replica set failover.
+	 */
+	@Scheduled(fixedDelayString = "${urlshortener.coherence.check-interval-ms:10000}")
+	public synchronized void check()
+	{
+		if (subscription == null)
+			return;
+		if (subscription.isActive())
+		{
+			active = true;
+			return;
+		}
+		container.remove(subscription);
+		// changes made while the stream was down are unknown
+		if (active)
+			cache.invalidateAll();
+		log.warn("Link change stream stopped, subscribing again.");
+		subscribe();
+	}
+
+	private void onChange(Message<ChangeStreamDocument<Document>, Link> message)
+	{
+		ChangeStreamDocument<Document> event = message.getRaw();
+		switch (event.getOperationType())
+		{
+		case INSERT:
+		case REPLACE:
+		case UPDATE:
+			Link link = message.getBody();
+			if (link != null)
+			{
+				service.created(link);
+				break;
+			}
+			// deleted before the full document was looked up
+		case DELETE:
+			BsonValue id = event.getDocumentKey().get("_id");
+			synchronized (deleted)
+			{
+				deleted.add(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.isString() ? id.asString().getValue() : id.toString());
+			}
+			break;
+		default:
+			// collection dropped or renamed, stream ends and check subscribes again
+			cache.invalidateAll();
+		}
+	}
+
+	@Scheduled(fixedDelay = 1000)
+	public void applyDeletes()
+	{
+		Set<String> ids;
+		synchronized (deleted)
+		{
+			if (deleted.isEmpty())
+				return;
+			ids = new HashSet<String>(deleted);
+			deleted.clear();
+		}
+		cache.invalidateIds(ids);
+	}
+}
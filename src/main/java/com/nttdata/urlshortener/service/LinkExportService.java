@@ -0,0 +1,131 @@
+package com.nttdata.urlshortener.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.model.LinkPage;
+
+/**
+* This class reads the links collection without loading it into memory.
+* Export follows a DB cursor and writes every document straight to the response,
+* a slow client simply blocks the writing thread, which stops reading the cursor.
+* Pages are found by id (keyset), so a page costs the same wherever it is.
+*/
+@Service
+public class LinkExportService
+{
+	public static final String CSV = "csv";
+	public static final String NDJSON = "ndjson";
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private ObjectMapper objectMapper;
+	// documents fetched from DB at once and written between flushes
+	@Value("${urlshortener.export.batch-size:1000}")
+	private int batchSize;
+
+	/**
+	 * @param (after) (id of the last link of previous page, null for the first page)
+	 * @param (size) (max number of links)
+	 * @return (page) (links ordered by id)
+	 */
+	public LinkPage getPage(String after, int size)
+	{
+		size = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		Query query = after == null ? new Query() : new Query(Criteria.where("id").gt(new ObjectId(after)));
+		query.with(Sort.by(Sort.Direction.ASC, "id")).limit(size);
+		List<Link> links = mongoTemplate.find(query, Link.class);
+		String next = links.size() == size ? links.get(size - 1).getId() : null;
+		return new LinkPage(links, next);
+	}
+
+	/**
+	 * This method writes all links, one per line.
+	 *
+	 * @param (out) (response body)
+	 * @param (format) (CSV or NDJSON)
+	 * @return (count) (number of links written)
+	 */
+	public long export(OutputStream out, String format) throws IOException
+	{
+		boolean csv = CSV.equalsIgnoreCase(format);
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		JsonGenerator generator = csv ? null : objectMapper.getFactory().createGenerator(writer);
+		// one document per line, flushed in batches only
+		ObjectWriter linkWriter = objectMapper.writerFor(Link.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		if (generator != null)
+			generator.setRootValueSeparator(null);
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		if (csv)
+			writer.write("id,shortUrl,longUrl,created,expiration,clicks\n");
+
+		long count = 0;
+		Query query = new Query().with(Sort.by(Sort.Direction.ASC, "id")).cursorBatchSize(batchSize);
+		try (CloseableIterator<Link> links = mongoTemplate.stream(query, Link.class))
+		{
+			while (links.hasNext())
+			{
+				Link link = links.next();
+				if (csv)
+					writer.write(link.getId() + "," + link.getShortUrl() + "," + csvField(link.getLongUrl()) + "," + format(dateFormat, link.getCreated()) + ","
+							+ format(dateFormat, link.getExpiration()) + "," + link.getClicks() + "\n");
+				else
+				{
+					linkWriter.writeValue(generator, link);
+					generator.writeRaw('\n');
+				}
+				if (++count % batchSize == 0)
+					flush(writer, generator);
+			}
+		}
+		flush(writer, generator);
+		return count;
+	}
+
+	private static void flush(Writer writer, JsonGenerator generator) throws IOException
+	{
+		if (generator != null)
+			generator.flush();
+		writer.flush();
+	}
+
+	private static String format(SimpleDateFormat dateFormat, Date date)
+	{
+		return date == null ? "" : dateFormat.format(date);
+	}
+
+	// quotes field containing CSV separators
+	private static String csvField(String value)
+	{
+		if (value == null)
+			return "";
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+			return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
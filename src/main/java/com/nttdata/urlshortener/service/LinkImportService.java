@@ -0,0 +1,347 @@
+package com.nttdata.urlshortener.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.BulkWriteError;
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+/**
+* This class creates short URLs for a stream of long URLs (bulk import).
+* Input is read and written back line by line in chunks, while one chunk is
+* parsed and validated the previous one is inserted to DB by an unordered bulk insert,
+* so memory use does not depend on the size of the import.
+* Every new link is charged to the create budget of the client, an import waits for it;
+* once a link is over budget for longer than max-wait-ms the import stops, the rest of its
+* chunk is answered THROTTLED and later lines are not read.
+*/
+@Service
+public class LinkImportService
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	public static final String CSV = "csv";
+	public static final String NDJSON = "ndjson";
+	private static final int DUPLICATE_KEY = 11000;
+	// budget of an import not subject to admission control
+	public static final LongSupplier UNLIMITED = () -> 0;
+
+	@Autowired
+	private LinkService service;
+	@Autowired
+	private UrlReducer reducer;
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private ThreadPoolTaskExecutor linkImportExecutor;
+	@Autowired
+	private ObjectMapper objectMapper;
+	@Value("${urlshortener.import.chunk-size:1000}")
+	private int chunkSize;
+	// longest wait for the create budget of one new link
+	@Value("${urlshortener.import.max-wait-ms:1000}")
+	private long maxWaitMs;
+	@Value("${urlshortener.domain:http://yz0101.com/}")
+	private String domain;
+
+	/**
+	 * This method reads long URLs, one per line, and writes one result per line.
+	 * CSV line is "longUrl[,days]", NDJSON line is {"longUrl":"...","days":n} or "...".
+	 *
+	 * @param (in) (request body)
+	 * @param (out) (response body)
+	 * @param (format) (CSV or NDJSON, results are written in the same format)
+	 * @param (days) (default link life span in days)
+	 * @param (budget) (charges one new link: 0 once charged, otherwise nanoseconds until it would be, see AdmissionFilter)
+	 * @return (lines) (number of lines processed)
+	 */
+	public int importLinks(InputStream in, OutputStream out, String format, int days, LongSupplier budget) throws IOException
+	{
+		boolean csv = CSV.equalsIgnoreCase(format);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		JsonGenerator generator = csv ? null : new JsonFactory().createGenerator(writer);
+		if (generator != null)
+			generator.setRootValueSeparator(null);
+
+		int lineNumber = 0;
+		Future<List<Result>> inFlight = null;
+		// keys created for the chunk in flight, it is not visible in DB yet
+		Map<String, String> inFlightKeys = new HashMap<String, String>();
+		List<Result> chunk = new ArrayList<Result>(chunkSize);
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			lineNumber++;
+			if (line.trim().isEmpty())
+				continue;
+			chunk.add(parse(line, lineNumber, csv, days));
+			if (chunk.size() == chunkSize)
+			{
+				// insert this chunk while the next one is being read
+				List<Result> ready = chunk;
+				inFlightKeys = prepare(ready, inFlightKeys, budget);
+				writeResults(inFlight, writer, generator);
+				inFlight = linkImportExecutor.submit(() -> insert(ready));
+				chunk = new ArrayList<Result>(chunkSize);
+				if (isThrottled(ready))
+					break;
+			}
+		}
+		if (!chunk.isEmpty())
+		{
+			List<Result> ready = chunk;
+			prepare(ready, inFlightKeys, budget);
+			writeResults(inFlight, writer, generator);
+			inFlight = linkImportExecutor.submit(() -> insert(ready));
+		}
+		writeResults(inFlight, writer, generator);
+		log.debug(String.format("%d lines imported.", lineNumber));
+		return lineNumber;
+	}
+
+	/**
+	 * This method parses one input line, invalid lines are marked right away.
+	 */
+	private Result parse(String line, int lineNumber, boolean csv, int days)
+	{
+		Result result = new Result(lineNumber);
+		result.days = days;
+		try
+		{
+			if (csv)
+			{
+				int comma = line.indexOf(',');
+				result.longUrl = (comma < 0 ? line : line.substring(0, comma)).trim();
+				if (comma >= 0)
+					result.days = Integer.parseInt(line.substring(comma + 1).trim());
+			}
+			else
+			{
+				JsonNode node = objectMapper.readTree(line);
+				if (node.isTextual())
+					result.longUrl = node.asText();
+				else
+				{
+					result.longUrl = node.path("longUrl").asText(null);
+					result.days = node.path("days").asInt(days);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			result.status = Status.INVALID;
+			return result;
+		}
+		if (result.longUrl == null || !reducer.isUrlValid(result.longUrl))
+			result.status = Status.INVALID;
+		return result;
+	}
+
+	/**
+	 * This method finds already shortened URLs with one query per chunk
+	 * and generates keys for the rest.
+	 *
+	 * @param (chunk) (parsed lines)
+	 * @param (inFlightKeys) (canonical URL - key map of the chunk being inserted)
+	 * @param (budget) (create budget new links are charged to)
+	 * @return (keys) (canonical URL - key map of this chunk)
+	 */
+	private Map<String, String> prepare(List<Result> chunk, Map<String, String> inFlightKeys, LongSupplier budget)
+	{
+		List<String> longUrls = new ArrayList<String>(chunk.size());
+		for (Result result : chunk)
+			if (result.status == null)
+				longUrls.add(result.longUrl);
+		Map<String, Link> existing = service.getByLongUrls(longUrls);
+		// the same URL twice in one chunk gets one key
+		Map<String, String> created = new HashMap<String, String>();
+		boolean throttled = false;
+
+		for (Result result : chunk)
+		{
+			if (result.status != null)
+				continue;
+			String canonicalUrl = reducer.canonicalUrl(result.longUrl);
+			Link link = existing.get(canonicalUrl);
+			String shortUrl = link != null ? link.getShortUrl() : created.containsKey(canonicalUrl) ? created.get(canonicalUrl) : inFlightKeys.get(canonicalUrl);
+			if (shortUrl != null)
+			{
+				result.status = Status.EXISTING;
+				result.shortUrl = shortUrl;
+				continue;
+			}
+			// once a link is over budget, the rest of the chunk is not charged
+			if (throttled || !charge(budget))
+			{
+				throttled = true;
+				result.status = Status.THROTTLED;
+				continue;
+			}
+			result.shortUrl = reducer.generateKey();
+			created.put(canonicalUrl, result.shortUrl);
+		}
+		return created;
+	}
+
+	/**
+	 * @param (budget) (create budget)
+	 * @return (true once one new link is charged, false if it would take longer than max-wait-ms)
+	 */
+	private boolean charge(LongSupplier budget)
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+		long wait;
+		while ((wait = budget.getAsLong()) > 0)
+		{
+			if (System.nanoTime() + wait - deadline > 0)
+				return false;
+			LockSupport.parkNanos(wait);
+		}
+		return true;
+	}
+
+	private static boolean isThrottled(List<Result> chunk)
+	{
+		for (Result result : chunk)
+			if (result.status == Status.THROTTLED)
+				return true;
+		return false;
+	}
+
+	/**
+	 * This method stores new links of a chunk with one unordered bulk insert.
+	 */
+	private List<Result> insert(List<Result> chunk)
+	{
+		List<Link> links = new ArrayList<Link>(chunk.size());
+		List<Result> pending = new ArrayList<Result>(chunk.size());
+		Date now = new Date();
+		for (Result result : chunk)
+		{
+			if (result.status != null)
+				continue;
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime(now);
+			calendar.add(Calendar.DATE, result.days);
+			Link link = new Link(result.shortUrl, result.longUrl, now, calendar.getTime(), 0);
+			link.setLongUrlHash(reducer.hashUrl(result.longUrl));
+			links.add(link);
+			pending.add(result);
+			result.status = Status.CREATED;
+		}
+		if (links.isEmpty())
+			return chunk;
+
+		try
+		{
+			mongoTemplate.bulkOps(BulkMode.UNORDERED, Link.class).insert(links).execute();
+		}
+		catch (BulkOperationException e)
+		{
+			for (BulkWriteError error : e.getErrors())
+				pending.get(error.getIndex()).status = error.getCode() == DUPLICATE_KEY ? Status.DUPLICATE : Status.FAILED;
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+			for (Result result : pending)
+				result.status = Status.FAILED;
+		}
+
+		for (int i = 0; i < links.size(); i++)
+			if (pending.get(i).status == Status.CREATED)
+				service.created(links.get(i));
+		return chunk;
+	}
+
+	private void writeResults(Future<List<Result>> inFlight, Writer writer, JsonGenerator generator) throws IOException
+	{
+		if (inFlight == null)
+			return;
+		List<Result> results;
+		try
+		{
+			results = inFlight.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException(e.getCause());
+		}
+
+		for (Result result : results)
+		{
+			String shortUrl = result.status == Status.CREATED || result.status == Status.EXISTING ? domain + result.shortUrl : "";
+			if (generator == null)
+			{
+				writer.write(result.line + "," + result.status + "," + shortUrl + "\n");
+				continue;
+			}
+			generator.writeStartObject();
+			generator.writeNumberField("line", result.line);
+			generator.writeStringField("status", result.status.name());
+			generator.writeStringField("shortUrl", shortUrl);
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+		// let the client see progress
+		if (generator != null)
+			generator.flush();
+		writer.flush();
+	}
+
+	public enum Status
+	{
+		CREATED, EXISTING, INVALID, DUPLICATE, FAILED, THROTTLED
+	}
+
+	private static final class Result
+	{
+		final int line;
+		String longUrl;
+		int days;
+		String shortUrl;
+		Status status;
+
+		Result(int line)
+		{
+			this.line = line;
+		}
+	}
+}
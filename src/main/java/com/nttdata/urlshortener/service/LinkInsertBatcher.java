@@ -0,0 +1,168 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BulkWriteError;
+import com.nttdata.urlshortener.metrics.RepositoryTimers;
+import com.nttdata.urlshortener.model.Link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+* This class inserts links of concurrent create requests together (group commit).
+* Links queued while one unordered bulk insert is in flight are written by the next one,
+* so under load a round trip stores many links, while a lone create is written at once.
+* Every caller gets its own future: the link, DuplicateKeyException if a unique
+* index (short URL, generated URL hash) rejected it, or the error of the insert.
+* Bulk inserts bypass ILinkRepository, they are timed here as operation insertBatch.
+*/
+@Component
+public class LinkInsertBatcher
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final int DUPLICATE_KEY = 11000;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private ThreadPoolTaskExecutor linkInsertExecutor;
+	@Autowired
+	private MeterRegistry registry;
+	@Value("${urlshortener.create.max-batch:500}")
+	private int maxBatch;
+	// extra wait for more links before a batch is written, 0 writes as soon as the previous batch is done
+	@Value("${urlshortener.create.linger-micros:0}")
+	private long lingerMicros;
+	private final ConcurrentLinkedQueue<Insert> queue = new ConcurrentLinkedQueue<Insert>();
+	// true while a writer task is queued or running
+	private final AtomicBoolean writing = new AtomicBoolean();
+	private RepositoryTimers timers;
+
+	@PostConstruct
+	private void init()
+	{
+		timers = new RepositoryTimers(registry, LinkInsertBatcher.class, "insertBatch");
+	}
+
+	/**
+	 * @param (link) (new link, its id is assigned here)
+	 * @return (future) (completed with the link once it is stored)
+	 */
+	public CompletableFuture<Link> insert(Link link)
+	{
+		// ids are known before the insert, bulk inserts do not set them
+		if (link.getId() == null)
+			link.setId(new ObjectId().toHexString());
+		Insert insert = new Insert(link);
+		queue.add(insert);
+		if (writing.compareAndSet(false, true))
+			start();
+		return insert.future;
+	}
+
+	private void start()
+	{
+		try
+		{
+			linkInsertExecutor.execute(this::write);
+		}
+		catch (TaskRejectedException e)
+		{
+			// executor shut down, links queued with no writer would never complete
+			log.error(e.getMessage());
+			writing.set(false);
+			Insert insert;
+			while ((insert = queue.poll()) != null)
+				insert.future.completeExceptionally(e);
+		}
+	}
+
+	private void write()
+	{
+		while (true)
+		{
+			linger();
+			List<Insert> batch = new ArrayList<Insert>();
+			Insert insert;
+			while (batch.size() < maxBatch && (insert = queue.poll()) != null)
+				batch.add(insert);
+			if (batch.isEmpty())
+			{
+				writing.set(false);
+				// a link queued after polling, before the flag was cleared, has no writer yet
+				if (queue.isEmpty() || !writing.compareAndSet(false, true))
+					return;
+				continue;
+			}
+			write(batch);
+		}
+	}
+
+	private void linger()
+	{
+		if (lingerMicros > 0)
+			LockSupport.parkNanos(lingerMicros * 1000);
+	}
+
+	private void write(List<Insert> batch)
+	{
+		List<Link> links = new ArrayList<Link>(batch.size());
+		for (Insert insert : batch)
+			links.add(insert.link);
+		RuntimeException[] errors = new RuntimeException[batch.size()];
+		try
+		{
+			timers.record(() -> mongoTemplate.bulkOps(BulkMode.UNORDERED, Link.class).insert(links).execute());
+		}
+		catch (BulkOperationException e)
+		{
+			for (BulkWriteError error : e.getErrors())
+				errors[error.getIndex()] = error.getCode() == DUPLICATE_KEY ? new DuplicateKeyException(error.getMessage())
+						: new DataIntegrityViolationException(error.getMessage());
+		}
+		catch (RuntimeException e)
+		{
+			log.error(e.getMessage());
+			for (int i = 0; i < errors.length; i++)
+				errors[i] = e;
+		}
+
+		for (int i = 0; i < batch.size(); i++)
+			if (errors[i] == null)
+				batch.get(i).future.complete(batch.get(i).link);
+			else
+				batch.get(i).future.completeExceptionally(errors[i]);
+	}
+
+	private static final class Insert
+	{
+		final Link link;
+		final CompletableFuture<Link> future = new CompletableFuture<Link>();
+
+		Insert(Link link)
+		{
+			this.link = link;
+		}
+	}
+}
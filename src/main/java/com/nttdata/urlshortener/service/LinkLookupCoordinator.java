@@ -0,0 +1,233 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.repository.ILinkRepository;
+import com.nttdata.urlshortener.repository.LinkLookup;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+* This class looks up short URLs missing from the cache in DB for LinkService (see ReactiveLinkLookupCoordinator).
+* Concurrent requests for the same short URL wait for one query (a link just shared is
+* requested by thousands at once), distinct short URLs queued meanwhile are found by one
+* "ShortUrl $in" query. A few queries run at a time, so a lone lookup is not held up,
+* and under load batches grow with the time queries take. An optional window waits for more.
+*/
+@Component
+public class LinkLookupCoordinator implements MeterBinder
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	@Autowired
+	private LinkLookup lookup;
+	@Autowired
+	private ILinkRepository repository;
+	@Autowired
+	private ThreadPoolTaskExecutor linkLookupExecutor;
+	@Value("${urlshortener.lookup.threads:4}")
+	private int threads;
+	@Value("${urlshortener.lookup.max-batch:100}")
+	private int maxBatch;
+	@Value("${urlshortener.lookup.window-micros:0}")
+	private long windowMicros;
+	// redirect lookups fetch id, long URL and expiration only
+	@Value("${urlshortener.lookup.lean:true}")
+	private boolean lean;
+	// longest wait of a blocking caller for its lookup
+	@Value("${urlshortener.lookup.timeout-ms:5000}")
+	private long timeoutMs;
+	// lookups waiting for DB, by short URL
+	private final ConcurrentHashMap<String, CompletableFuture<Link>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Link>>();
+	private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+	// query tasks queued or running
+	private final AtomicInteger active = new AtomicInteger();
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private DistributionSummary batchSizes;
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (link) (link in DB, null if there is none)
+	 * @throws (QueryTimeoutException) (lookup did not complete in time)
+	 */
+	public Link find(String shortUrl)
+	{
+		try
+		{
+			return lookup(shortUrl).get(timeoutMs, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException e)
+		{
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+		}
+		catch (TimeoutException e)
+		{
+			// future is left to the query, later lookups of the short URL share it
+			throw new QueryTimeoutException("Lookup of " + shortUrl + " did not complete in " + timeoutMs + " ms");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (future) (completed with the link in DB, or null if there is none)
+	 */
+	public CompletableFuture<Link> lookup(String shortUrl)
+	{
+		lookups.increment();
+		CompletableFuture<Link> future = inFlight.get(shortUrl);
+		if (future != null)
+		{
+			coalesced.increment();
+			return future;
+		}
+		CompletableFuture<Link> created = new CompletableFuture<Link>();
+		future = inFlight.putIfAbsent(shortUrl, created);
+		if (future != null)
+		{
+			coalesced.increment();
+			return future;
+		}
+		queue.add(shortUrl);
+		if (claim())
+			start();
+		return created;
+	}
+
+	private void start()
+	{
+		try
+		{
+			linkLookupExecutor.execute(this::query);
+		}
+		catch (TaskRejectedException e)
+		{
+			// executor shut down, short URLs queued with no task left would never complete
+			log.error(e.getMessage());
+			if (active.decrementAndGet() == 0)
+				fail(e);
+		}
+	}
+
+	private void fail(RuntimeException e)
+	{
+		String shortUrl;
+		while ((shortUrl = queue.poll()) != null)
+		{
+			CompletableFuture<Link> future = inFlight.remove(shortUrl);
+			if (future != null)
+				future.completeExceptionally(e);
+		}
+	}
+
+	// true if a query task may start, tasks running drain the queue otherwise
+	private boolean claim()
+	{
+		int running = active.get();
+		while (running < threads)
+		{
+			if (active.compareAndSet(running, running + 1))
+				return true;
+			running = active.get();
+		}
+		return false;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		FunctionCounter.builder("urlshortener.lookup.requests", lookups, LongAdder::sum)
+				.description("Short URLs looked up in DB on cache miss")
+				.register(registry);
+		FunctionCounter.builder("urlshortener.lookup.coalesced", coalesced, LongAdder::sum)
+				.description("Lookups answered by a query already in flight for the same short URL")
+				.register(registry);
+		batchSizes = DistributionSummary.builder("urlshortener.lookup.batch.size")
+				.description("Distinct short URLs per DB query")
+				.register(registry);
+		Gauge.builder("urlshortener.lookup.batch.max", this, c -> c.maxBatch)
+				.description("Most short URLs per DB query")
+				.register(registry);
+		Gauge.builder("urlshortener.lookup.batch.window", this, c -> c.windowMicros / 1e6)
+				.description("Wait for more short URLs before a query")
+				.baseUnit("seconds")
+				.register(registry);
+	}
+
+	private void query()
+	{
+		while (true)
+		{
+			if (windowMicros > 0)
+				LockSupport.parkNanos(windowMicros * 1000);
+			List<String> batch = new ArrayList<String>();
+			String shortUrl;
+			while (batch.size() < maxBatch && (shortUrl = queue.poll()) != null)
+				batch.add(shortUrl);
+			if (batch.isEmpty())
+			{
+				active.decrementAndGet();
+				// a short URL queued after polling, while all tasks were busy, has no task yet
+				if (queue.isEmpty() || !claim())
+					return;
+				continue;
+			}
+			query(batch);
+		}
+	}
+
+	private void query(List<String> batch)
+	{
+		if (batchSizes != null)
+			batchSizes.record(batch.size());
+		Map<String, Link> found = new HashMap<String, Link>();
+		try
+		{
+			for (Link link : lean ? lookup.findByShortUrlIn(batch) : repository.findByShortUrlIn(batch))
+				found.put(link.getShortUrl(), link);
+		}
+		catch (RuntimeException e)
+		{
+			for (String shortUrl : batch)
+				inFlight.remove(shortUrl).completeExceptionally(e);
+			return;
+		}
+		// completed before removed, a lookup in between gets the result instead of a new query
+		for (String shortUrl : batch)
+		{
+			CompletableFuture<Link> future = inFlight.get(shortUrl);
+			future.complete(found.get(shortUrl));
+			inFlight.remove(shortUrl, future);
+		}
+	}
+}
@@ -1,58 +1,345 @@
 package com.nttdata.urlshortener.service;
 
+import java.util.Collection;
 import java.util.Date;
-import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.stereotype.Service;
 
 import com.nttdata.urlshortener.model.Link;
 import com.nttdata.urlshortener.repository.ILinkRepository;
+import com.nttdata.urlshortener.utilities.UrlReducer;
 
 @Service
 public class LinkService
 {
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	// name of the unique index, found in the duplicate key error
+	private static final String GENERATED_URL_HASH = "GeneratedUrlHash";
 	@Autowired
 	private ILinkRepository repository;
+	@Autowired
+	private LinkCache cache;
+	@Autowired
+	private LongUrlIndex longUrlIndex;
+	@Autowired
+	private ShortUrlFilter shortUrlFilter;
+	@Autowired
+	private ExpiryManager expiryManager;
+	// concurrent misses share DB queries
+	@Autowired
+	private LinkLookupCoordinator lookupCoordinator;
+	// creates of concurrent requests share round trips
+	@Autowired
+	private LinkInsertBatcher insertBatcher;
+	@Autowired
+	private UrlReducer reducer;
+	// custom keys share the namespace of generated keys, a taken one is skipped
+	@Value("${urlshortener.create.generated-key-attempts:3}")
+	private int generatedKeyAttempts;
+	// longest wait of a create for its insert
+	@Value("${urlshortener.create.timeout-ms:10000}")
+	private long createTimeoutMs;
+	// off heap copy of all links, on redirect nodes only
+	@Autowired
+	private RedirectTableService redirectTable;
+
+	@PostConstruct
+	private void init()
+	{
+		// evict cached link at its expiration, unless it has been replaced meanwhile
+		expiryManager.addListener(link ->
+		{
+			if (cache.get(link.getShortUrl()) == link)
+				expire(link);
+		});
+	}
 
+	/**
+	 * This method stores a new link in one round trip, shared with concurrent creates.
+	 * There is no existence check, the unique short URL index rejects duplicates.
+	 *
+	 * @return (link) (stored link)
+	 * @throws (DuplicateKeyException) (short URL is taken)
+	 * @throws (QueryTimeoutException) (insert did not complete in time, it may still be stored)
+	 */
 	public Link create(String shortUrl, String longUrl, Date created, Date expiration, Integer clicks)
+	{
+		return store(newLink(shortUrl, longUrl, created, expiration, clicks));
+	}
+
+	// waits for the insert of the link, shared with concurrent creates
+	private Link store(Link newLink)
+	{
+		try
+		{
+			insertBatcher.insert(newLink).get(createTimeoutMs, TimeUnit.MILLISECONDS);
+			created(newLink);
+			return newLink;
+		}
+		catch (ExecutionException e)
+		{
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+		}
+		catch (TimeoutException e)
+		{
+			throw new QueryTimeoutException("Insert of " + newLink.getShortUrl() + " did not complete in " + createTimeoutMs + " ms");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * This method stores a new link under a generated key, a taken key is skipped for the next one.
+	 * Concurrent creates of the same long URL may all pass getByLongUrl, the unique generated
+	 * URL hash index lets only one of them in and the others return its link, no extra query
+	 * unless the insert is rejected.
+	 *
+	 * @param (longUrl) (Original long URL supplied by user)
+	 * @return (link) (stored link or the one of a concurrent create, null if URL is not valid)
+	 * @throws (DuplicateKeyException) (every generated key attempted is taken)
+	 */
+	public Link createGenerated(String longUrl, Date created, Date expiration)
+	{
+		boolean unique = true;
+		for (int attempt = 1;; attempt++)
+		{
+			String shortUrl = reducer.reduceUrl(longUrl);
+			if (shortUrl.isEmpty())
+				return null;
+			try
+			{
+				return store(newGenerated(shortUrl, longUrl, created, expiration, unique));
+			}
+			catch (DuplicateKeyException e)
+			{
+				if (unique && isGeneratedUrlConflict(e))
+				{
+					Link existing = repository.findByGeneratedUrlHash(reducer.hashUrl(longUrl));
+					if (isLiveLinkOf(existing, longUrl))
+						return existing;
+					// hash collision or expired link not removed yet, stored without the unique hash
+					unique = false;
+					attempt--;
+					continue;
+				}
+				if (attempt >= generatedKeyAttempts)
+					throw e;
+				log.error(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @param (unique) (false if the long URL hash is held by another link, the new link is not deduplicated then)
+	 * @return (link) (new link under a generated key, not stored yet)
+	 */
+	Link newGenerated(String shortUrl, String longUrl, Date created, Date expiration, boolean unique)
+	{
+		Link newLink = newLink(shortUrl, longUrl, created, expiration, 0);
+		if (unique)
+			newLink.setGeneratedUrlHash(newLink.getLongUrlHash());
+		return newLink;
+	}
+
+	// true if insert was rejected by the generated URL hash index, not by the short URL one
+	boolean isGeneratedUrlConflict(Throwable e)
+	{
+		return e instanceof DuplicateKeyException && e.getMessage() != null && e.getMessage().contains(GENERATED_URL_HASH);
+	}
+
+	// true if link holding a generated URL hash can be returned for the long URL
+	boolean isLiveLinkOf(Link link, String longUrl)
+	{
+		return link != null && !link.isExpiredAt(System.currentTimeMillis())
+				&& reducer.canonicalUrl(longUrl).equals(reducer.canonicalUrl(link.getLongUrl()));
+	}
+
+	// new link with long URL hash, not stored yet
+	Link newLink(String shortUrl, String longUrl, Date created, Date expiration, Integer clicks)
 	{
 		Link newLink = new Link(shortUrl, longUrl, created, expiration, clicks);
-		return repository.save(newLink);
+		newLink.setLongUrlHash(reducer.hashUrl(longUrl));
+		return newLink;
 	}
 
-	public List<Link> getAll()
+	/**
+	 * This method makes in memory lookup structures aware of a link just stored to DB.
+	 *
+	 * @param (link) (stored link with long URL hash)
+	 */
+	public void created(Link link)
 	{
-		return repository.findAll();
+		longUrlIndex.add(link.getLongUrlHash());
+		shortUrlFilter.add(link.getShortUrl());
+		// short URL may be remembered as unknown or expired
+		cache.invalidate(link.getShortUrl());
+		expiryManager.revive(link.getShortUrl());
 	}
 
+	/**
+	 * This method finds a link to redirect to, from cache if possible.
+	 * The link may be projected (see Link.isProjected), use getLink to read or save the whole entity.
+	 *
+	 * @param (shortUrl) (short URL)
+	 * @return (link) (link with at least id, short URL, long URL and expiration, or null)
+	 */
 	public Link getByShortUrl(String shortUrl)
 	{
-		return repository.findByShortUrl(shortUrl);
+		Link link = cache.get(shortUrl);
+		if (link != null || cache.isKnownMiss(shortUrl) || !shortUrlFilter.mightExist(shortUrl))
+			return link;
+
+		link = lookupCoordinator.find(shortUrl);
+		if (link == null)
+			cache.putMiss(shortUrl);
+		else
+		{
+			cache.put(link);
+			expiryManager.track(link);
+		}
+		return link;
 	}
 
+	/**
+	 * This method drops expired link from memory and remembers its short URL as gone.
+	 *
+	 * @param (link) (expired link)
+	 */
+	public void expire(Link link)
+	{
+		expiryManager.markGone(link.getShortUrl());
+		cache.invalidate(link.getShortUrl());
+		redirectTable.remove(link.getShortUrl());
+	}
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (true if short URL is known to be expired, no DB query)
+	 */
+	public boolean isGone(String shortUrl)
+	{
+		return expiryManager.isGone(shortUrl);
+	}
+
+	/**
+	 * This method finds the whole link, a cached projected link is read again from DB.
+	 *
+	 * @param (shortUrl) (short URL)
+	 * @return (link) (link with all fields, or null)
+	 */
+	public Link getLink(String shortUrl)
+	{
+		Link link = cache.get(shortUrl);
+		if (link != null && !link.isProjected())
+			return link;
+		return shortUrlFilter.mightExist(shortUrl) ? repository.findByShortUrl(shortUrl) : null;
+	}
+
+	// reads the link straight from DB, cached copy lags behind clicks flushed as $inc
+	public Link getStats(String shortUrl)
+	{
+		return shortUrlFilter.mightExist(shortUrl) ? repository.findByShortUrl(shortUrl) : null;
+	}
+
+	/**
+	 * This method finds link already created for the same (canonical) long URL.
+	 * Filter rules out new URLs without DB query, otherwise indexed hash is queried
+	 * and candidates are compared to rule out hash collisions.
+	 *
+	 * @param (longUrl) (Original long URL supplied by user)
+	 * @return (link) (existing link or null)
+	 */
 	public Link getByLongUrl(String longUrl)
 	{
-		return repository.findByLongUrl(longUrl);
+		long longUrlHash = reducer.hashUrl(longUrl);
+		if (!longUrlIndex.mightExist(longUrlHash))
+			return null;
+
+		String canonicalUrl = reducer.canonicalUrl(longUrl);
+		for (Link link : repository.findByLongUrlHash(longUrlHash))
+			if (canonicalUrl.equals(reducer.canonicalUrl(link.getLongUrl())))
+				return link;
+		return null;
+	}
+
+	/**
+	 * Bulk variant of getByLongUrl for imports, one DB query for the whole batch.
+	 *
+	 * @param (longUrls) (Original long URLs, all valid)
+	 * @return (links) (canonical long URL - existing link map)
+	 */
+	public Map<String, Link> getByLongUrls(Collection<String> longUrls)
+	{
+		Map<String, Link> links = new HashMap<String, Link>();
+		Set<Long> hashes = new HashSet<Long>();
+		for (String longUrl : longUrls)
+		{
+			long longUrlHash = reducer.hashUrl(longUrl);
+			if (longUrlIndex.mightExist(longUrlHash))
+				hashes.add(longUrlHash);
+		}
+		if (hashes.isEmpty())
+			return links;
+
+		for (Link link : repository.findByLongUrlHashIn(hashes))
+			links.putIfAbsent(reducer.canonicalUrl(link.getLongUrl()), link);
+		return links;
 	}
 
+	/**
+	 * @param (link) (whole link, as returned by getLink)
+	 * @return (link) (saved link)
+	 * @throws (IllegalArgumentException) (link is projected, saving it would drop its other fields)
+	 */
 	public Link update(Link link)
 	{
-		return repository.save(link);
+		if (link.isProjected())
+			throw new IllegalArgumentException("Projected link " + link.getShortUrl() + " cannot be saved");
+		link = repository.save(link);
+		cache.invalidate(link.getShortUrl());
+		redirectTable.remove(link.getShortUrl());
+		expiryManager.revive(link.getShortUrl());
+		return link;
 	}
 
 	public void delete(String shortUrl)
 	{
-		Link link = repository.findByShortUrl(shortUrl);
+		Link link = getLink(shortUrl);
 		repository.delete(link);
+		cache.invalidate(shortUrl);
+		redirectTable.remove(shortUrl);
 	}
 	
 	public void deleteAll()
 	{
 		repository.deleteAll();
+		cache.invalidateAll();
+		redirectTable.removeAll();
+	}
+
+	public Map<String, Long> getCacheStatistics()
+	{
+		Map<String, Long> statistics = cache.statistics();
+		statistics.put("filterRejections", shortUrlFilter.getRejections());
+		return statistics;
 	}
 
 }
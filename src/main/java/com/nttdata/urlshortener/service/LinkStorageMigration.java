@@ -0,0 +1,74 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+* This class removes the "_class" type hint from links stored before hints were omitted
+* (see StorageConfiguration), in the background.
+* Links are walked in id order, one small batch per run, so the migration never holds
+* a long running write and costs the same per batch however far it got.
+* A restarted node walks the collection once more, documents already converted are only read.
+*/
+@Component
+public class LinkStorageMigration
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final String COLLECTION = "links";
+	private static final String TYPE_HINT = "_class";
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Value("${urlshortener.storage.omit-type-hint:false}")
+	private boolean omitTypeHint;
+	@Value("${urlshortener.storage.migration-batch-size:1000}")
+	private int batchSize;
+	// id of the last document looked at, null before the first batch
+	private Object lastId;
+	private boolean done;
+	private long converted;
+
+	@Scheduled(fixedDelayString = "${urlshortener.storage.migration-interval-ms:1000}")
+	public void migrate()
+	{
+		if (!omitTypeHint || done)
+			return;
+		try
+		{
+			Query query = lastId == null ? new Query() : new Query(Criteria.where("_id").gt(lastId));
+			query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(batchSize);
+			query.fields().include("_id").include(TYPE_HINT);
+			List<Document> batch = mongoTemplate.find(query, Document.class, COLLECTION);
+			if (batch.isEmpty())
+			{
+				done = true;
+				log.info(String.format("Type hint migration done, %d links converted.", converted));
+				return;
+			}
+			List<Object> ids = new ArrayList<Object>();
+			for (Document document : batch)
+				if (document.containsKey(TYPE_HINT))
+					ids.add(document.get("_id"));
+			if (!ids.isEmpty())
+				converted += mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(ids)), new Update().unset(TYPE_HINT), COLLECTION).getModifiedCount();
+			lastId = batch.get(batch.size() - 1).get("_id");
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.utilities.BloomFilter;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+* This class answers whether a long URL may already be shortened.
+* Hashes of all long URLs in DB are kept in a Bloom filter of fixed size,
+* so new URLs (the common case) are recognized without a DB query.
+* Filter is caught up with long URLs shortened by other nodes every few seconds,
+* a URL shortened meanwhile on another node may be shortened again here.
+* Until the filter is loaded every URL is treated as possibly known.
+*/
+@Component
+public class LongUrlIndex implements MeterBinder
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private UrlReducer reducer;
+	@Value("${urlshortener.dedup.chunk-size:1000}")
+	private int chunkSize;
+	// ObjectId timestamps of different nodes are not ordered exactly, catch up re-reads this margin
+	@Value("${urlshortener.dedup.catch-up-margin-ms:60000}")
+	private long catchUpMargin;
+	private volatile BloomFilter filter;
+	private volatile boolean ready;
+	// newest creation time seen in DB
+	private volatile long lastSeen;
+	// lookups checked and lookups answered without DB
+	private final LongAdder checks = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (expectedUrls) (number of long URLs filter is sized for)
+	 * @param (falsePositiveRate) (probability of a needless DB query)
+	 */
+	public LongUrlIndex(@Value("${urlshortener.dedup.expected-urls:10000000}") long expectedUrls,
+			@Value("${urlshortener.dedup.false-positive-rate:0.01}") double falsePositiveRate)
+	{
+		filter = new BloomFilter(expectedUrls, falsePositiveRate);
+	}
+
+	/**
+	 * @param (longUrlHash) (hash of long URL)
+	 * @return (false if URL is certainly not in DB)
+	 */
+	public boolean mightExist(long longUrlHash)
+	{
+		checks.increment();
+		if (!ready || filter.mightContain(longUrlHash))
+			return true;
+		rejections.increment();
+		return false;
+	}
+
+	public void add(long longUrlHash)
+	{
+		filter.put(longUrlHash);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		FunctionCounter.builder("urlshortener.filter.checks", checks, LongAdder::sum)
+				.tag("filter", "longurl")
+				.description("Lookups checked by the filter")
+				.register(registry);
+		FunctionCounter.builder("urlshortener.filter.rejections", rejections, LongAdder::sum)
+				.tag("filter", "longurl")
+				.description("Lookups answered by the filter without DB query")
+				.register(registry);
+	}
+
+	/**
+	 * @return (filter) (filter of all long URLs, null until loaded)
+	 */
+	public BloomFilter getFilter()
+	{
+		return ready ? filter : null;
+	}
+
+	/**
+	 * This method starts with a filter saved earlier (see WarmStartSnapshot)
+	 * and adds long URLs shortened since. Filter is used only once caught up,
+	 * load adds all long URLs of DB to it later.
+	 *
+	 * @param (saved) (filter saved earlier)
+	 * @param (savedAt) (time filter was saved)
+	 */
+	public synchronized void restore(BloomFilter saved, long savedAt)
+	{
+		filter = saved;
+		try
+		{
+			long start = System.currentTimeMillis();
+			scanSince(savedAt);
+			lastSeen = start;
+			ready = true;
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void load()
+	{
+		try
+		{
+			backfill();
+			long start = System.currentTimeMillis();
+			long count = scan(new Query());
+			lastSeen = start;
+			ready = true;
+			log.info(String.format("%d long URLs loaded to dedup filter.", count));
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * This method adds long URLs shortened recently, i.e. by other nodes.
+	 */
+	@Scheduled(fixedDelayString = "${urlshortener.dedup.catch-up-interval-ms:5000}")
+	public synchronized void catchUp()
+	{
+		if (!ready)
+			return;
+		try
+		{
+			long start = System.currentTimeMillis();
+			scanSince(lastSeen);
+			lastSeen = start;
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	private long scanSince(long time)
+	{
+		ObjectId since = new ObjectId(new Date(time - catchUpMargin));
+		return scan(new Query(Criteria.where("id").gt(since)));
+	}
+
+	private long scan(Query query)
+	{
+		long count = 0;
+		query.fields().include("longUrlHash");
+		try (CloseableIterator<Link> links = mongoTemplate.stream(query, Link.class))
+		{
+			while (links.hasNext())
+			{
+				Long hash = links.next().getLongUrlHash();
+				if (hash != null)
+					filter.put(hash);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * This method computes hash for links stored before the hash field existed.
+	 */
+	private void backfill()
+	{
+		Query query = new Query(Criteria.where("longUrlHash").exists(false));
+		query.fields().include("longUrl");
+		int pending = 0;
+		BulkOperations operations = mongoTemplate.bulkOps(BulkMode.UNORDERED, Link.class);
+		try (CloseableIterator<Link> links = mongoTemplate.stream(query, Link.class))
+		{
+			while (links.hasNext())
+			{
+				Link link = links.next();
+				long hash;
+				try
+				{
+					hash = reducer.hashUrl(link.getLongUrl());
+				}
+				catch (Exception e)
+				{
+					log.error(e.getMessage());
+					continue;
+				}
+				operations.updateOne(new Query(Criteria.where("id").is(link.getId())), new Update().set("longUrlHash", hash));
+				if (++pending == chunkSize)
+				{
+					operations.execute();
+					operations = mongoTemplate.bulkOps(BulkMode.UNORDERED, Link.class);
+					pending = 0;
+				}
+			}
+		}
+		if (pending > 0)
+			operations.execute();
+	}
+}
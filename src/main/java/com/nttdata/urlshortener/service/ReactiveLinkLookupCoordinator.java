@@ -0,0 +1,171 @@
+package com.nttdata.urlshortener.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.stereotype.Component;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.repository.IReactiveLinkRepository;
+import com.nttdata.urlshortener.repository.ReactiveLinkLookup;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+* This class looks up short URLs missing from the cache in DB for ReactiveLinkService,
+* as LinkLookupCoordinator does for LinkService, but on the reactive driver: queries hold
+* no thread, the next batch is taken when a query completes.
+* Concurrent requests for the same short URL wait for one query, distinct short URLs
+* queued meanwhile are found by one "ShortUrl $in" query. A few queries run at a time.
+*/
+@Component
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveLinkLookupCoordinator implements MeterBinder
+{
+	@Autowired
+	private ReactiveLinkLookup lookup;
+	@Autowired
+	private IReactiveLinkRepository repository;
+	// queries in flight at a time, as many as query threads of the blocking coordinator
+	@Value("${urlshortener.lookup.threads:4}")
+	private int queries;
+	@Value("${urlshortener.lookup.max-batch:100}")
+	private int maxBatch;
+	@Value("${urlshortener.lookup.window-micros:0}")
+	private long windowMicros;
+	// redirect lookups fetch id, long URL and expiration only
+	@Value("${urlshortener.lookup.lean:true}")
+	private boolean lean;
+	// lookups waiting for DB, by short URL
+	private final ConcurrentHashMap<String, CompletableFuture<Link>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Link>>();
+	private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+	// queries waiting for their window or running
+	private final AtomicInteger active = new AtomicInteger();
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private DistributionSummary batchSizes;
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (link) (link in DB, empty if there is none)
+	 */
+	public Mono<Link> lookup(String shortUrl)
+	{
+		return Mono.defer(() -> Mono.fromFuture(enqueue(shortUrl)));
+	}
+
+	// future completed with the link in DB, or null if there is none
+	private CompletableFuture<Link> enqueue(String shortUrl)
+	{
+		lookups.increment();
+		CompletableFuture<Link> future = inFlight.get(shortUrl);
+		if (future != null)
+		{
+			coalesced.increment();
+			return future;
+		}
+		CompletableFuture<Link> created = new CompletableFuture<Link>();
+		future = inFlight.putIfAbsent(shortUrl, created);
+		if (future != null)
+		{
+			coalesced.increment();
+			return future;
+		}
+		queue.add(shortUrl);
+		if (claim())
+			next();
+		return created;
+	}
+
+	// true if a query may start, queries running drain the queue otherwise
+	private boolean claim()
+	{
+		int running = active.get();
+		while (running < queries)
+		{
+			if (active.compareAndSet(running, running + 1))
+				return true;
+			running = active.get();
+		}
+		return false;
+	}
+
+	private void next()
+	{
+		if (windowMicros > 0)
+			Mono.delay(Duration.ofNanos(windowMicros * 1000)).subscribe(tick -> query());
+		else
+			query();
+	}
+
+	private void query()
+	{
+		List<String> batch = new ArrayList<String>();
+		String shortUrl;
+		while (batch.size() < maxBatch && (shortUrl = queue.poll()) != null)
+			batch.add(shortUrl);
+		if (batch.isEmpty())
+		{
+			active.decrementAndGet();
+			// a short URL queued after polling, while all queries were busy, has no query yet
+			if (!queue.isEmpty() && claim())
+				next();
+			return;
+		}
+
+		if (batchSizes != null)
+			batchSizes.record(batch.size());
+		Map<String, Link> found = new HashMap<String, Link>();
+		Flux<Link> links = lean ? lookup.findByShortUrlIn(batch) : repository.findByShortUrlIn(batch);
+		links.subscribe(link -> found.put(link.getShortUrl(), link),
+				e ->
+				{
+					for (String failed : batch)
+						inFlight.remove(failed).completeExceptionally(e);
+					next();
+				},
+				() ->
+				{
+					// completed before removed, a lookup in between gets the result instead of a new query
+					for (String done : batch)
+					{
+						CompletableFuture<Link> future = inFlight.get(done);
+						future.complete(found.get(done));
+						inFlight.remove(done, future);
+					}
+					next();
+				});
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		FunctionCounter.builder("urlshortener.lookup.reactive.requests", lookups, LongAdder::sum)
+				.description("Short URLs looked up in DB on cache miss, reactive driver")
+				.register(registry);
+		FunctionCounter.builder("urlshortener.lookup.reactive.coalesced", coalesced, LongAdder::sum)
+				.description("Lookups answered by a query already in flight for the same short URL, reactive driver")
+				.register(registry);
+		batchSizes = DistributionSummary.builder("urlshortener.lookup.reactive.batch.size")
+				.description("Distinct short URLs per DB query, reactive driver")
+				.register(registry);
+	}
+}
@@ -0,0 +1,150 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.repository.IReactiveLinkRepository;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+* Non-blocking counterpart of LinkService for reactive serving mode.
+* It shares all in-memory structures (cache, filters, expiry) with LinkService,
+* only DB access goes through the reactive driver, no thread waits for a query.
+*/
+@Service
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveLinkService
+{
+	@Autowired
+	private IReactiveLinkRepository repository;
+	@Autowired
+	private LinkService service;
+	@Autowired
+	private ReactiveLinkLookupCoordinator lookupCoordinator;
+	@Autowired
+	private LinkCache cache;
+	@Autowired
+	private ShortUrlFilter shortUrlFilter;
+	@Autowired
+	private LongUrlIndex longUrlIndex;
+	@Autowired
+	private ExpiryManager expiryManager;
+	@Autowired
+	private UrlReducer reducer;
+	@Autowired
+	private ClickStatsService clickStats;
+	@Value("${urlshortener.create.generated-key-attempts:3}")
+	private int generatedKeyAttempts;
+
+	public Mono<Link> getByShortUrl(String shortUrl)
+	{
+		Link link = cache.get(shortUrl);
+		if (link != null)
+			return Mono.just(link);
+		if (cache.isKnownMiss(shortUrl) || !shortUrlFilter.mightExist(shortUrl))
+			return Mono.empty();
+
+		// concurrent misses share DB queries on the reactive driver
+		return lookupCoordinator.lookup(shortUrl)
+				.doOnNext(found ->
+				{
+					cache.put(found);
+					expiryManager.track(found);
+				})
+				.switchIfEmpty(Mono.defer(() ->
+				{
+					cache.putMiss(shortUrl);
+					return Mono.empty();
+				}));
+	}
+
+	// reads the link straight from DB, cached copy lags behind clicks flushed as $inc
+	public Mono<Link> getStats(String shortUrl)
+	{
+		return shortUrlFilter.mightExist(shortUrl) ? repository.findByShortUrl(shortUrl) : Mono.empty();
+	}
+
+	/**
+	 * This method reads clicks of other nodes off the event loop, it is a blocking DB call.
+	 *
+	 * @param (shortUrl) (short URL)
+	 * @return (clicks) (clicks not stored to DB yet)
+	 */
+	public Mono<Long> getPendingClicks(String shortUrl)
+	{
+		return Mono.fromCallable(() -> clickStats.getPendingClicks(shortUrl)).subscribeOn(Schedulers.elastic());
+	}
+
+	/**
+	 * @see LinkService#getByLongUrl(String)
+	 */
+	public Mono<Link> getByLongUrl(String longUrl)
+	{
+		long longUrlHash = reducer.hashUrl(longUrl);
+		if (!longUrlIndex.mightExist(longUrlHash))
+			return Mono.empty();
+
+		String canonicalUrl = reducer.canonicalUrl(longUrl);
+		return repository.findByLongUrlHash(longUrlHash)
+				.filter(link -> canonicalUrl.equals(reducer.canonicalUrl(link.getLongUrl())))
+				.next();
+	}
+
+	/**
+	 * This method generates a key off the event loop,
+	 * leasing a new key range is a blocking DB call.
+	 *
+	 * @param (longUrl) (Original long URL supplied by user)
+	 * @return (key) (generated key, empty string if URL is not valid)
+	 */
+	public Mono<String> reduceUrl(String longUrl)
+	{
+		return Mono.fromCallable(() -> reducer.reduceUrl(longUrl)).subscribeOn(Schedulers.elastic());
+	}
+
+	public Mono<Link> create(String shortUrl, String longUrl, Date created, Date expiration, Integer clicks)
+	{
+		return insert(service.newLink(shortUrl, longUrl, created, expiration, clicks));
+	}
+
+	// inserted by the reactive driver, DuplicateKeyException if short URL or generated URL hash is taken
+	private Mono<Link> insert(Link newLink)
+	{
+		return repository.insert(newLink).doOnNext(service::created);
+	}
+
+	/**
+	 * This method stores a new link under a generated key, retried with the next key if taken.
+	 * A concurrent create of the same long URL rejected by the unique generated URL hash
+	 * returns the stored link.
+	 *
+	 * @see LinkService#createGenerated(String, Date, Date)
+	 * @return (link) (stored link or the one of a concurrent create, empty if URL is not valid)
+	 */
+	public Mono<Link> createGenerated(String longUrl, Date created, Date expiration)
+	{
+		return createGenerated(longUrl, created, expiration, true)
+				.onErrorResume(service::isGeneratedUrlConflict, e -> repository.findByGeneratedUrlHash(reducer.hashUrl(longUrl))
+						.filter(existing -> service.isLiveLinkOf(existing, longUrl))
+						// hash collision or expired link not removed yet, stored without the unique hash
+						.switchIfEmpty(Mono.defer(() -> createGenerated(longUrl, created, expiration, false))));
+	}
+
+	private Mono<Link> createGenerated(String longUrl, Date created, Date expiration, boolean unique)
+	{
+		// a retry generates the next key
+		return reduceUrl(longUrl)
+				.flatMap(shortUrl -> shortUrl.isEmpty() ? Mono.<Link>empty() : insert(service.newGenerated(shortUrl, longUrl, created, expiration, unique)))
+				.retry(generatedKeyAttempts - 1, e -> e instanceof DuplicateKeyException && !service.isGeneratedUrlConflict(e));
+	}
+}
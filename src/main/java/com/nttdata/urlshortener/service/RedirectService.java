@@ -0,0 +1,79 @@
+package com.nttdata.urlshortener.service;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.nttdata.urlshortener.clicks.ClickCounterStore;
+import com.nttdata.urlshortener.clicks.ClickTimeSeries;
+import com.nttdata.urlshortener.clicks.HeavyHitters;
+import com.nttdata.urlshortener.model.Link;
+
+/**
+* This class answers redirect requests, for RedirectFilter and LinkController alike.
+* Location header value is encoded once per cached link, so a redirect of a cached link
+* allocates nothing but what the servlet container and click counters need.
+*/
+@Service
+public class RedirectService
+{
+	public static final String LOCATION = "Location";
+
+	@Autowired
+	private LinkService service;
+	// off heap copy of all links, on redirect nodes only
+	@Autowired
+	private RedirectTableService redirectTable;
+	// click counter holder for short links
+	@Autowired
+	private ClickCounterStore clickCounters;
+	// clicks per minute, hour and day
+	@Autowired
+	private ClickTimeSeries clickSeries;
+	// most clicked short URLs over sliding windows
+	@Autowired
+	private HeavyHitters heavyHitters;
+
+	/**
+	 * This method sets status 302 and Location of the long URL, 404 or 410 (expired).
+	 * Clicks are counted for redirects only.
+	 *
+	 * @param (shortUrl) (short URL)
+	 * @param (response) (response to set status and header of, body is left empty)
+	 */
+	public void redirect(String shortUrl, HttpServletResponse response)
+	{
+		// expired links are known in memory
+		if (service.isGone(shortUrl))
+		{
+			response.setStatus(HttpServletResponse.SC_GONE);
+			return;
+		}
+		long now = System.currentTimeMillis();
+		// redirect node: no Link object, no DB, Location encoded at export
+		String location = redirectTable.getLocation(shortUrl, now);
+		if (location == null)
+		{
+			Link link = service.getByShortUrl(shortUrl);
+			if (link == null)
+			{
+				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			if (link.isExpiredAt(now))
+			{
+				service.expire(link);
+				response.setStatus(HttpServletResponse.SC_GONE);
+				return;
+			}
+			location = link.getLocation();
+		}
+
+		clickCounters.increment(shortUrl);
+		clickSeries.record(shortUrl);
+		heavyHitters.record(shortUrl);
+		response.setStatus(HttpServletResponse.SC_FOUND);
+		response.setHeader(LOCATION, location);
+	}
+}
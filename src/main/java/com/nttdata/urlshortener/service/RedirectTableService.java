@@ -0,0 +1,202 @@
+package com.nttdata.urlshortener.service;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.utilities.OffHeapLinkTable;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+* This class serves redirects of a dedicated redirect node from an off heap copy of all links,
+* exported from DB at startup and at intervals, and swapped in at once when complete.
+* It is off by default: the copy is as old as the last export. Links deleted, expired or changed
+* through this node since are remembered as removed and looked up as usual until the next export,
+* links changed by other nodes keep redirecting as exported. Links created since, and custom
+* short URLs which cannot be packed, are not in the copy and are looked up as usual.
+*/
+@Component
+public class RedirectTableService implements MeterBinder
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final String FILE_PREFIX = "links-";
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Value("${urlshortener.redirect-table.enabled:false}")
+	private boolean enabled;
+	@Value("${urlshortener.redirect-table.directory:redirect-table}")
+	private String directory;
+	@Value("${urlshortener.redirect-table.batch-size:10000}")
+	private int batchSize;
+	// table used for lookups, null until exported
+	private volatile OffHeapLinkTable table;
+	// short URLs deleted or changed since the export started, not answered from the table
+	private final Set<String> removed = ConcurrentHashMap.newKeySet();
+	// lookups answered by the table and lookups passed on
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * This method finds a live link without allocation, but for the returned Location value.
+	 *
+	 * @param (shortUrl) (short URL)
+	 * @param (now) (current time in milliseconds)
+	 * @return (location) (Location header value of the long URL, null if table is not loaded, link is not in it or expired)
+	 */
+	public String getLocation(String shortUrl, long now)
+	{
+		OffHeapLinkTable current = table;
+		if (current == null || !removed.isEmpty() && removed.contains(shortUrl))
+			return null;
+		long ref = current.find(shortUrl);
+		if (ref == OffHeapLinkTable.NOT_FOUND || current.expiration(ref) <= now)
+		{
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return current.location(ref);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		FunctionCounter.builder("urlshortener.redirect.table.hits", hits, LongAdder::sum)
+				.description("Redirects answered by the off heap link table")
+				.register(registry);
+		FunctionCounter.builder("urlshortener.redirect.table.misses", misses, LongAdder::sum)
+				.description("Redirects not found in the off heap link table")
+				.register(registry);
+		Gauge.builder("urlshortener.redirect.table.size", this, s -> s.table == null ? 0 : s.table.size())
+				.description("Links in the off heap link table")
+				.register(registry);
+	}
+
+	/**
+	 * This method stops answering a short URL from the table until the next export,
+	 * i.e. when its link is deleted, expired or changed.
+	 *
+	 * @param (shortUrl) (short URL)
+	 */
+	public void remove(String shortUrl)
+	{
+		// during the first export as well, the link may be exported before it was removed
+		if (enabled)
+			removed.add(shortUrl);
+	}
+
+	/**
+	 * This method drops the table, all links are looked up as usual until the next export.
+	 */
+	public synchronized void removeAll()
+	{
+		OffHeapLinkTable previous = table;
+		table = null;
+		removed.clear();
+		if (previous != null)
+			delete(previous);
+	}
+
+	/**
+	 * This method exports live links into a new table and replaces the current one.
+	 * First export runs on the scheduler right after startup, not on the starting thread.
+	 */
+	@Scheduled(fixedDelayString = "${urlshortener.redirect-table.refresh-interval-ms:3600000}")
+	public synchronized void refresh()
+	{
+		if (!enabled)
+			return;
+		if (table == null)
+			deletePrevious();
+		OffHeapLinkTable.Builder builder = null;
+		try
+		{
+			long start = System.currentTimeMillis();
+			// removed before the export are not in it, removed during it may be
+			Set<String> exported = new HashSet<String>(removed);
+			builder = OffHeapLinkTable.builder(new File(directory), mongoTemplate.count(new Query(), Link.class));
+			long skipped = 0;
+			Query query = new Query().cursorBatchSize(batchSize);
+			query.fields().include("shortUrl").include("longUrl").include("expiration");
+			try (CloseableIterator<Link> links = mongoTemplate.stream(query, Link.class))
+			{
+				while (links.hasNext())
+				{
+					Link link = links.next();
+					if (link.isExpiredAt(start))
+						continue;
+					long expiration = link.getExpiration() == null ? OffHeapLinkTable.NEVER : link.getExpiration().getTime();
+					if (!builder.add(link.getShortUrl(), link.getLongUrl(), expiration))
+						skipped++;
+				}
+			}
+			OffHeapLinkTable previous = table;
+			table = builder.build();
+			builder = null;
+			removed.removeAll(exported);
+			if (previous != null)
+				delete(previous);
+			log.info(String.format("Redirect table of %d links exported in %d ms, %d links left to DB lookups.", table.size(),
+					System.currentTimeMillis() - start, skipped));
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+			discard(builder);
+		}
+	}
+
+	// tables of previous runs
+	private void deletePrevious()
+	{
+		File[] files = new File(directory).listFiles((dir, name) -> name.startsWith(FILE_PREFIX));
+		if (files != null)
+			for (File file : files)
+				if (!file.delete())
+					log.warn("Cannot delete " + file);
+	}
+
+	private void delete(OffHeapLinkTable previous)
+	{
+		try
+		{
+			previous.delete();
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	private void discard(OffHeapLinkTable.Builder builder)
+	{
+		if (builder == null)
+			return;
+		try
+		{
+			builder.discard();
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package com.nttdata.urlshortener.service;
+
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.utilities.BloomFilter;
+import com.nttdata.urlshortener.utilities.Hashing;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+* This class knows all live short URLs, so lookups of random short URLs
+* (scanners, bots, typos) are answered without a DB query.
+* Filter is built from DB at startup, extended on create, caught up with
+* links created by other nodes every few seconds and rebuilt periodically to forget deleted links.
+* Generated keys up to the leased sequence are nearly all taken, so a generated key missing
+* from the filter there is looked up in DB anyway: it may have been created by another node
+* since the last catch up. Custom short URLs created by another node are rejected until then.
+*/
+@Component
+public class ShortUrlFilter implements MeterBinder
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private KeyRangeAllocator keyAllocator;
+	@Value("${urlshortener.shorturl-filter.expected-urls:10000000}")
+	private long expectedUrls;
+	@Value("${urlshortener.shorturl-filter.false-positive-rate:0.01}")
+	private double falsePositiveRate;
+	// ObjectId timestamps of different nodes are not ordered exactly, catch up re-reads this margin
+	@Value("${urlshortener.shorturl-filter.catch-up-margin-ms:60000}")
+	private long catchUpMargin;
+	// filter used for lookups
+	private volatile BloomFilter filter;
+	// filter being rebuilt, receives new short URLs as well
+	private volatile BloomFilter rebuilding;
+	// newest creation time seen in DB
+	private volatile long lastSeen;
+	// highest sequence number leased at the last catch up, and numbers other nodes may lease until the next one
+	private volatile long leased;
+	@Value("${urlshortener.shorturl-filter.sequence-slack:100000}")
+	private long sequenceSlack;
+	// lookups checked and lookups answered without DB
+	private final LongAdder checks = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+
+	/**
+	 * @param (shortUrl) (short URL)
+	 * @return (false if short URL is certainly not in DB)
+	 */
+	public boolean mightExist(String shortUrl)
+	{
+		checks.increment();
+		BloomFilter current = filter;
+		if (current == null || current.mightContain(Hashing.hash64(shortUrl)) || mightBeRecent(shortUrl))
+			return true;
+		rejections.increment();
+		return false;
+	}
+
+	// generated key within the leased sequence, possibly created by another node since the last catch up
+	private boolean mightBeRecent(String shortUrl)
+	{
+		return UrlReducer.isGeneratedForm(shortUrl) && UrlReducer.decode(shortUrl) <= leased + sequenceSlack;
+	}
+
+	public void add(String shortUrl)
+	{
+		long hash = Hashing.hash64(shortUrl);
+		BloomFilter current = filter;
+		if (current != null)
+			current.put(hash);
+		BloomFilter next = rebuilding;
+		if (next != null)
+			next.put(hash);
+	}
+
+	public long getRejections()
+	{
+		return rejections.sum();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		FunctionCounter.builder("urlshortener.filter.checks", checks, LongAdder::sum)
+				.tag("filter", "shorturl")
+				.description("Lookups checked by the filter")
+				.register(registry);
+		FunctionCounter.builder("urlshortener.filter.rejections", rejections, LongAdder::sum)
+				.tag("filter", "shorturl")
+				.description("Lookups answered by the filter without DB query")
+				.register(registry);
+	}
+
+	/**
+	 * @return (filter) (filter used for lookups, null until loaded)
+	 */
+	public BloomFilter getFilter()
+	{
+		return filter;
+	}
+
+	/**
+	 * This method starts with a filter saved earlier (see WarmStartSnapshot)
+	 * and adds short URLs created since, so lookups are answered before the first rebuild.
+	 *
+	 * @param (saved) (filter saved earlier)
+	 * @param (savedAt) (time filter was saved)
+	 */
+	public synchronized void restore(BloomFilter saved, long savedAt)
+	{
+		filter = saved;
+		lastSeen = savedAt;
+		catchUp();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void load()
+	{
+		rebuild();
+	}
+
+	/**
+	 * This method builds a fresh filter from DB and swaps it in.
+	 * Deleted short URLs disappear from filter only this way.
+	 */
+	@Scheduled(fixedDelayString = "${urlshortener.shorturl-filter.rebuild-interval-ms:3600000}", initialDelayString = "${urlshortener.shorturl-filter.rebuild-interval-ms:3600000}")
+	public synchronized void rebuild()
+	{
+		try
+		{
+			long count = mongoTemplate.count(new Query(), Link.class);
+			BloomFilter fresh = new BloomFilter(Math.max(expectedUrls, count * 2), falsePositiveRate);
+			rebuilding = fresh;
+			long start = System.currentTimeMillis();
+			leased = keyAllocator.leased();
+			int loaded = scan(fresh, new Query());
+			lastSeen = start;
+			filter = fresh;
+			log.info(String.format("%d short URLs loaded to filter.", loaded));
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+		finally
+		{
+			rebuilding = null;
+		}
+	}
+
+	/**
+	 * This method adds short URLs created recently, i.e. by other nodes.
+	 */
+	@Scheduled(fixedDelayString = "${urlshortener.shorturl-filter.catch-up-interval-ms:5000}")
+	public synchronized void catchUp()
+	{
+		BloomFilter current = filter;
+		if (current == null)
+			return;
+		try
+		{
+			long start = System.currentTimeMillis();
+			leased = keyAllocator.leased();
+			ObjectId since = new ObjectId(new Date(lastSeen - catchUpMargin));
+			scan(current, new Query(Criteria.where("id").gt(since)));
+			lastSeen = start;
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	private int scan(BloomFilter target, Query query)
+	{
+		int count = 0;
+		query.fields().include("shortUrl");
+		try (CloseableIterator<Link> links = mongoTemplate.stream(query, Link.class))
+		{
+			while (links.hasNext())
+			{
+				target.put(Hashing.hash64(links.next().getShortUrl()));
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,303 @@
+package com.nttdata.urlshortener.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.repository.ILinkRepository;
+import com.nttdata.urlshortener.utilities.BloomFilter;
+
+/**
+* This class saves the hot working set of this node to a local binary file
+* on shutdown and at intervals, and loads it while the application starts,
+* so the first requests after a deploy are answered from memory instead of MongoDB.
+* Snapshot holds the hottest cached links, both membership filters and, when written
+* on shutdown, the rest of the leased key range.
+* It is loaded through a memory mapping before the web server accepts requests;
+* short URLs created since are added to the filter right away, cached links are
+* compared with DB in the background once the application is ready.
+*/
+@Component
+public class WarmStartSnapshot
+{
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private static final int MAGIC = 0x55534E50; // "USNP"
+	private static final int VERSION = 1;
+	// null fields of Link
+	private static final long NO_VALUE = Long.MIN_VALUE;
+	private static final int NO_CLICKS = Integer.MIN_VALUE;
+
+	@Autowired
+	private LinkCache cache;
+	@Autowired
+	private ShortUrlFilter shortUrlFilter;
+	@Autowired
+	private LongUrlIndex longUrlIndex;
+	@Autowired
+	private KeyRangeAllocator keyAllocator;
+	@Autowired
+	private ExpiryManager expiryManager;
+	@Autowired
+	private ILinkRepository repository;
+	@Value("${urlshortener.snapshot.enabled:true}")
+	private boolean enabled;
+	private final File file;
+	// number of hottest cached links saved
+	@Value("${urlshortener.snapshot.links:10000}")
+	private int maxLinks;
+	// older snapshots are ignored, filters would miss too many links
+	@Value("${urlshortener.snapshot.max-age-ms:86400000}")
+	private long maxAge;
+	@Value("${urlshortener.snapshot.chunk-size:1000}")
+	private int chunkSize;
+	// links loaded from snapshot, compared with DB once application is ready
+	private List<Link> restored = new ArrayList<Link>();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (path) (snapshot file, local to the node)
+	 */
+	public WarmStartSnapshot(@Value("${urlshortener.snapshot.file:snapshot/urlshortener.snapshot}") String path)
+	{
+		this.file = new File(path);
+	}
+
+	/**
+	 * This method loads snapshot, if any. Snapshot file is deleted afterwards,
+	 * so a key range is never handed out twice.
+	 */
+	@PostConstruct
+	public void load()
+	{
+		if (!enabled || !file.exists())
+			return;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			{
+				log.warn("Snapshot " + file + " has unknown format, ignored.");
+				return;
+			}
+			long savedAt = buffer.getLong();
+			if (System.currentTimeMillis() - savedAt > maxAge)
+			{
+				log.info("Snapshot " + file + " is too old, ignored.");
+				return;
+			}
+			long next = buffer.getLong();
+			long end = buffer.getLong();
+			keyAllocator.restore(next, end);
+			if (buffer.get() != 0)
+				shortUrlFilter.restore(BloomFilter.read(buffer), savedAt);
+			if (buffer.get() != 0)
+				longUrlIndex.restore(BloomFilter.read(buffer), savedAt);
+
+			int count = buffer.getInt();
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < count; i++)
+			{
+				Link link = readLink(buffer);
+				if (link.isExpiredAt(now))
+					continue;
+				cache.put(link);
+				expiryManager.track(link);
+				restored.add(link);
+			}
+			log.info(String.format("Snapshot of %s loaded, %d links cached.", new Date(savedAt), restored.size()));
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+		finally
+		{
+			delete();
+		}
+	}
+
+	/**
+	 * This method replaces restored links by their current version in DB,
+	 * links deleted meanwhile are dropped.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void reconcile()
+	{
+		List<Link> links = restored;
+		restored = new ArrayList<Link>();
+		try
+		{
+			for (int from = 0; from < links.size(); from += chunkSize)
+			{
+				Map<String, Link> chunk = new HashMap<String, Link>();
+				for (Link link : links.subList(from, Math.min(from + chunkSize, links.size())))
+					chunk.put(link.getShortUrl(), link);
+				Set<String> missing = new HashSet<String>(chunk.keySet());
+				for (Link link : repository.findByShortUrlIn(chunk.keySet()))
+				{
+					missing.remove(link.getShortUrl());
+					// link invalidated or changed meanwhile is left alone, only the restored copy is replaced
+					if (cache.get(link.getShortUrl()) == chunk.get(link.getShortUrl()))
+						cache.put(link);
+				}
+				for (String shortUrl : missing)
+					if (cache.get(shortUrl) == chunk.get(shortUrl))
+						cache.invalidate(shortUrl);
+			}
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${urlshortener.snapshot.interval-ms:300000}", initialDelayString = "${urlshortener.snapshot.interval-ms:300000}")
+	public void save()
+	{
+		save(false);
+	}
+
+	@PreDestroy
+	private void shutdown()
+	{
+		save(true);
+	}
+
+	/**
+	 * This method writes snapshot to a temporary file and moves it in place.
+	 *
+	 * @param (keys) (true on shutdown, leased key range is handed over to the next run)
+	 */
+	private synchronized void save(boolean keys)
+	{
+		if (!enabled)
+			return;
+		File temporary = new File(file.getPath() + ".tmp");
+		try
+		{
+			Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16)))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(System.currentTimeMillis());
+				// a periodic snapshot must not hand out keys, they are used after it is written
+				long[] range = keys ? keyAllocator.release() : new long[] { 0, 0 };
+				out.writeLong(range[0]);
+				out.writeLong(range[1]);
+				writeFilter(out, shortUrlFilter.getFilter());
+				writeFilter(out, longUrlIndex.getFilter());
+				Collection<Link> links = cache.hottest(maxLinks);
+				out.writeInt(links.size());
+				for (Link link : links)
+					writeLink(out, link);
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (Exception e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	private void delete()
+	{
+		try
+		{
+			Files.deleteIfExists(file.toPath());
+		}
+		catch (IOException e)
+		{
+			log.error(e.getMessage());
+		}
+	}
+
+	private static void writeFilter(DataOutputStream out, BloomFilter filter) throws IOException
+	{
+		out.writeBoolean(filter != null);
+		if (filter != null)
+			filter.write(out);
+	}
+
+	private static void writeLink(DataOutputStream out, Link link) throws IOException
+	{
+		writeString(out, link.getId());
+		writeString(out, link.getShortUrl());
+		writeString(out, link.getLongUrl());
+		out.writeLong(link.getLongUrlHash() == null ? NO_VALUE : link.getLongUrlHash());
+		out.writeLong(link.getCreated() == null ? NO_VALUE : link.getCreated().getTime());
+		out.writeLong(link.getExpiration() == null ? NO_VALUE : link.getExpiration().getTime());
+		out.writeInt(link.getClicks() == null ? NO_CLICKS : link.getClicks());
+	}
+
+	private static Link readLink(ByteBuffer buffer)
+	{
+		String id = readString(buffer);
+		String shortUrl = readString(buffer);
+		String longUrl = readString(buffer);
+		long longUrlHash = buffer.getLong();
+		long created = buffer.getLong();
+		long expiration = buffer.getLong();
+		int clicks = buffer.getInt();
+		Link link = new Link(id, shortUrl, longUrl, created == NO_VALUE ? null : new Date(created),
+				expiration == NO_VALUE ? null : new Date(expiration), clicks == NO_CLICKS ? null : clicks);
+		link.setLongUrlHash(longUrlHash == NO_VALUE ? null : longUrlHash);
+		// projected link was cached, stored links always have created date and clicks
+		link.setProjected(created == NO_VALUE && clicks == NO_CLICKS);
+		return link;
+	}
+
+	// length prefixed UTF-8, -1 for null
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,127 @@
+package com.nttdata.urlshortener.utilities;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+* This class is a lock-free Bloom filter over 64 bit hashes.
+* It answers "definitely absent" or "maybe present" using a fixed amount of memory.
+* Elements cannot be removed, filter has to be rebuilt instead.
+*/
+public class BloomFilter
+{
+	// bit array, 64 bits per element
+	private final AtomicLongArray bits;
+	// number of bits
+	private final long bitSize;
+	// number of hash functions
+	private final int hashCount;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (expectedInsertions) (number of elements filter is sized for)
+	 * @param (falsePositiveRate) (desired probability of false "maybe present")
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate)
+	{
+		expectedInsertions = Math.max(1, expectedInsertions);
+		long size = (long) (-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		// round up to whole words
+		int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (size + 63) >>> 6));
+		this.bits = new AtomicLongArray(words);
+		this.bitSize = (long) words << 6;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+	}
+
+	private BloomFilter(int words, int hashCount)
+	{
+		this.bits = new AtomicLongArray(words);
+		this.bitSize = (long) words << 6;
+		this.hashCount = hashCount;
+	}
+
+	/**
+	 * This method reads a filter written by write, i.e. from a memory mapped file.
+	 *
+	 * @param (buffer) (buffer positioned at the filter, position is moved past it)
+	 * @return (filter) (filter with the same bits)
+	 */
+	public static BloomFilter read(ByteBuffer buffer)
+	{
+		int hashCount = buffer.getInt();
+		int words = buffer.getInt();
+		BloomFilter filter = new BloomFilter(words, hashCount);
+		for (int i = 0; i < words; i++)
+			filter.bits.set(i, buffer.getLong());
+		return filter;
+	}
+
+	/**
+	 * This method writes hash count and bits, filter may be changed meanwhile,
+	 * bits set concurrently may be missing.
+	 *
+	 * @param (out) (target)
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeInt(hashCount);
+		out.writeInt(bits.length());
+		for (int i = 0; i < bits.length(); i++)
+			out.writeLong(bits.get(i));
+	}
+
+	/**
+	 * @param (hash) (64 bit hash of element)
+	 */
+	public void put(long hash)
+	{
+		// double hashing, derives all hash functions from two halves
+		long combined = hash;
+		long increment = Hashing.mix(hash) | 1;
+		for (int i = 0; i < hashCount; i++)
+		{
+			setBit((combined & Long.MAX_VALUE) % bitSize);
+			combined += increment;
+		}
+	}
+
+	/**
+	 * @param (hash) (64 bit hash of element)
+	 * @return (false if element was never put, true if it may have been)
+	 */
+	public boolean mightContain(long hash)
+	{
+		long combined = hash;
+		long increment = Hashing.mix(hash) | 1;
+		for (int i = 0; i < hashCount; i++)
+		{
+			long index = (combined & Long.MAX_VALUE) % bitSize;
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0)
+				return false;
+			combined += increment;
+		}
+		return true;
+	}
+
+	public long bitSize()
+	{
+		return bitSize;
+	}
+
+	private void setBit(long index)
+	{
+		int word = (int) (index >>> 6);
+		long mask = 1L << index;
+		long value;
+		do
+		{
+			value = bits.get(word);
+			if ((value & mask) != 0)
+				return;
+		}
+		while (!bits.compareAndSet(word, value, value | mask));
+	}
+}
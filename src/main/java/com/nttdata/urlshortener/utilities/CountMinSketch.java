@@ -0,0 +1,65 @@
+package com.nttdata.urlshortener.utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+* This class is a lock-free Count-Min Sketch over 64 bit hashes.
+* It estimates how often an element was added using a fixed amount of memory.
+* Estimates never undercount, they overcount by at most 2.7 / width of all additions
+* with probability 1 - 0.37 ^ depth.
+*/
+public class CountMinSketch
+{
+	// depth rows of width counters each
+	private final AtomicLongArray counters;
+	private final int width;
+	private final int depth;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (width) (counters per row, rounded up to a power of two)
+	 * @param (depth) (number of rows, hash functions)
+	 */
+	public CountMinSketch(int width, int depth)
+	{
+		this.width = Integer.highestOneBit(Math.max(2, width) * 2 - 1);
+		this.depth = Math.max(1, depth);
+		this.counters = new AtomicLongArray(this.width * this.depth);
+	}
+
+	/**
+	 * @param (hash) (64 bit hash of element)
+	 * @return (estimate) (estimated count of element including this addition)
+	 */
+	public long add(long hash)
+	{
+		// double hashing, as in BloomFilter
+		long combined = hash;
+		long increment = Hashing.mix(hash) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0, offset = 0; row < depth; row++, offset += width)
+		{
+			estimate = Math.min(estimate, counters.incrementAndGet(offset + (int) (combined & (width - 1))));
+			combined += increment;
+		}
+		return estimate;
+	}
+
+	/**
+	 * @param (hash) (64 bit hash of element)
+	 * @return (estimate) (estimated count of element)
+	 */
+	public long estimate(long hash)
+	{
+		long combined = hash;
+		long increment = Hashing.mix(hash) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0, offset = 0; row < depth; row++, offset += width)
+		{
+			estimate = Math.min(estimate, counters.get(offset + (int) (combined & (width - 1))));
+			combined += increment;
+		}
+		return estimate;
+	}
+}
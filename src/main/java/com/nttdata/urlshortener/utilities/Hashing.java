@@ -0,0 +1,42 @@
+package com.nttdata.urlshortener.utilities;
+
+/**
+* This class computes fixed width hashes of strings without allocation.
+*/
+public class Hashing
+{
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+	private static final long PRIME = 0x100000001B3L;
+
+	/**
+	 * This method computes 64 bit hash of characters.
+	 * FNV-1a over chars, finished with murmur3 mixer for good bit distribution.
+	 *
+	 * @param (chars) (any string)
+	 * @return (hash) (64 bit hash)
+	 */
+	public static long hash64(CharSequence chars)
+	{
+		long hash = SEED;
+		int length = chars.length();
+		for (int i = 0; i < length; i++)
+			hash = (hash ^ chars.charAt(i)) * PRIME;
+		return mix(hash ^ length);
+	}
+
+	/**
+	 * murmur3 64 bit finalizer
+	 *
+	 * @param (hash) (any number)
+	 * @return (hash) (well distributed number)
+	 */
+	public static long mix(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
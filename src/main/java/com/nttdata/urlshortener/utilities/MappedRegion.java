@@ -0,0 +1,84 @@
+package com.nttdata.urlshortener.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+* This class maps a file of any size into memory as 1 GB chunks, a single
+* MappedByteBuffer is limited to 2 GB. Longs and ints must be 8 byte aligned,
+* so they never cross a chunk. Absolute reads and writes only, safe for concurrent readers.
+*/
+public final class MappedRegion
+{
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+	private final MappedByteBuffer[] chunks;
+	private final long size;
+
+	private MappedRegion(MappedByteBuffer[] chunks, long size)
+	{
+		this.chunks = chunks;
+		this.size = size;
+	}
+
+	/**
+	 * @param (file) (file to map, extended to size when writable)
+	 * @param (size) (bytes to map)
+	 * @param (writable) (true to map read-write)
+	 * @return (region) (mapped file, stays valid after the file is deleted)
+	 */
+	public static MappedRegion map(File file, long size, boolean writable) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r"))
+		{
+			if (writable && raf.length() < size)
+				raf.setLength(size);
+			FileChannel channel = raf.getChannel();
+			FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+			MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+			for (int i = 0; i < chunks.length; i++)
+			{
+				long position = (long) i << CHUNK_BITS;
+				chunks[i] = channel.map(mode, position, Math.min(CHUNK_MASK + 1, size - position));
+			}
+			return new MappedRegion(chunks, size);
+		}
+	}
+
+	public long size()
+	{
+		return size;
+	}
+
+	public long getLong(long position)
+	{
+		return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+	}
+
+	public void putLong(long position, long value)
+	{
+		chunks[(int) (position >>> CHUNK_BITS)].putLong((int) (position & CHUNK_MASK), value);
+	}
+
+	public int getInt(long position)
+	{
+		return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & CHUNK_MASK));
+	}
+
+	/**
+	 * This method copies bytes, they may cross chunks.
+	 *
+	 * @param (position) (first byte)
+	 * @param (target) (array to copy to)
+	 * @param (length) (number of bytes)
+	 */
+	public void get(long position, byte[] target, int length)
+	{
+		for (int i = 0; i < length; i++, position++)
+			target[i] = chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+	}
+}
@@ -0,0 +1,203 @@
+package com.nttdata.urlshortener.utilities;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+* This class is a read-only hash table of short URLs to long URLs and expirations,
+* held in memory mapped files, so tens of millions of links cost neither heap nor GC time.
+* Index file is an open addressing table of 16 byte slots [packed short URL, data offset],
+* linear probing, packed short URL 0 marks an empty slot.
+* Data file holds entries [expiration][length][Location header value], each 8 byte aligned.
+* The Location value is encoded at export (UrlReducer.toLocation), it is ASCII, so a hit
+* copies its bytes into a String and nothing else.
+* Only short URLs packable by UrlReducer.pack are held, others must be looked up elsewhere.
+*/
+public final class OffHeapLinkTable
+{
+	public static final long NOT_FOUND = -1;
+	// expiration of links which never expire
+	public static final long NEVER = Long.MAX_VALUE;
+	private static final int SLOT_BYTES = 16;
+	private static final double MAX_LOAD = 0.9;
+	// Location bytes are read into here, grown to the longest URL seen by the thread
+	private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[256]);
+
+	private final MappedRegion index;
+	private final MappedRegion data;
+	private final long mask;
+	private final long size;
+	private final File indexFile;
+	private final File dataFile;
+
+	private OffHeapLinkTable(MappedRegion index, MappedRegion data, long size, File indexFile, File dataFile)
+	{
+		this.index = index;
+		this.data = data;
+		this.mask = index.size() / SLOT_BYTES - 1;
+		this.size = size;
+		this.indexFile = indexFile;
+		this.dataFile = dataFile;
+	}
+
+	/**
+	 * @param (directory) (where table files are written)
+	 * @param (expected) (number of links to be added)
+	 * @return (builder) (builder of a table with room for expected links)
+	 */
+	public static Builder builder(File directory, long expected) throws IOException
+	{
+		return new Builder(directory, expected);
+	}
+
+	/**
+	 * @return (size) (number of links)
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * This method finds a short URL without allocation.
+	 *
+	 * @param (shortUrl) (short URL)
+	 * @return (ref) (reference of link data, NOT_FOUND if short URL is not in table)
+	 */
+	public long find(CharSequence shortUrl)
+	{
+		long key = UrlReducer.pack(shortUrl);
+		if (key < 0)
+			return NOT_FOUND;
+		// load factor is below 1, probing stops at an empty slot
+		for (long slot = Hashing.mix(key) & mask;; slot = (slot + 1) & mask)
+		{
+			long found = index.getLong(slot * SLOT_BYTES);
+			if (found == key)
+				return index.getLong(slot * SLOT_BYTES + 8);
+			if (found == 0)
+				return NOT_FOUND;
+		}
+	}
+
+	/**
+	 * @param (ref) (reference returned by find)
+	 * @return (expiration) (milliseconds, NEVER if link does not expire)
+	 */
+	public long expiration(long ref)
+	{
+		return data.getLong(ref);
+	}
+
+	/**
+	 * @param (ref) (reference returned by find)
+	 * @return (location) (Location header value of the long URL, read through a buffer of the calling thread)
+	 */
+	public String location(long ref)
+	{
+		int length = data.getInt(ref + 8);
+		byte[] buffer = BUFFER.get();
+		if (buffer.length < length)
+		{
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+			BUFFER.set(buffer);
+		}
+		data.get(ref + 12, buffer, length);
+		// one byte per character, no decoding
+		return new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * This method deletes table files. Mappings stay valid until they are garbage collected,
+	 * so lookups still running on this table are not disturbed.
+	 */
+	public void delete() throws IOException
+	{
+		Files.deleteIfExists(indexFile.toPath());
+		Files.deleteIfExists(dataFile.toPath());
+	}
+
+	/**
+	* This class writes a new table. Data file is written sequentially,
+	* index is filled in place through a writable mapping.
+	*/
+	public static final class Builder
+	{
+		private final File indexFile;
+		private final File dataFile;
+		private final MappedRegion index;
+		private final long mask;
+		private final long maxSize;
+		private final DataOutputStream out;
+		private long offset;
+		private long size;
+
+		private Builder(File directory, long expected) throws IOException
+		{
+			Files.createDirectories(directory.toPath());
+			String name = "links-" + Long.toHexString(System.currentTimeMillis());
+			indexFile = new File(directory, name + ".index");
+			dataFile = new File(directory, name + ".data");
+			// twice the expected links rounded up to a power of 2, load stays below one half
+			long slots = Long.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+			index = MappedRegion.map(indexFile, slots * SLOT_BYTES, true);
+			mask = slots - 1;
+			maxSize = (long) (slots * MAX_LOAD);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 1 << 16));
+		}
+
+		/**
+		 * @param (shortUrl) (short URL, unique)
+		 * @param (longUrl) (long URL)
+		 * @param (expiration) (milliseconds, NEVER if link does not expire)
+		 * @return (false if short URL cannot be packed or table is full)
+		 */
+		public boolean add(String shortUrl, String longUrl, long expiration) throws IOException
+		{
+			long key = UrlReducer.pack(shortUrl);
+			if (key < 0 || size >= maxSize)
+				return false;
+			long slot = Hashing.mix(key) & mask;
+			while (index.getLong(slot * SLOT_BYTES) != 0)
+				slot = (slot + 1) & mask;
+			index.putLong(slot * SLOT_BYTES, key);
+			index.putLong(slot * SLOT_BYTES + 8, offset);
+
+			byte[] bytes = UrlReducer.toLocation(longUrl).getBytes(StandardCharsets.US_ASCII);
+			out.writeLong(expiration);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			int length = 12 + bytes.length;
+			int padding = -length & 7;
+			for (int i = 0; i < padding; i++)
+				out.write(0);
+			offset += length + padding;
+			size++;
+			return true;
+		}
+
+		/**
+		 * @return (table) (table of all links added)
+		 */
+		public OffHeapLinkTable build() throws IOException
+		{
+			out.close();
+			return new OffHeapLinkTable(index, MappedRegion.map(dataFile, offset, false), size, indexFile, dataFile);
+		}
+
+		/**
+		 * This method deletes files of a table not built.
+		 */
+		public void discard() throws IOException
+		{
+			out.close();
+			Files.deleteIfExists(indexFile.toPath());
+			Files.deleteIfExists(dataFile.toPath());
+		}
+	}
+}
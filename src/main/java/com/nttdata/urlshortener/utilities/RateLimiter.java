@@ -0,0 +1,77 @@
+package com.nttdata.urlshortener.utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+* This class limits request rates of many clients, lock free and without allocation.
+* Each client is a token bucket kept as one number (GCRA): the time its bucket would be full again.
+* Clients are hashed onto a fixed number of stripes, so memory does not grow with clients;
+* clients sharing a stripe share its budget.
+*/
+public final class RateLimiter
+{
+	private final AtomicLongArray stripes;
+	private final int mask;
+	// nanoseconds per request at the sustained rate
+	private final long interval;
+	// how far a client may run ahead of the sustained rate, burst - 1 requests
+	private final long tolerance;
+	// times are kept relative to creation, so they start at 0 and never wrap
+	private final long origin = System.nanoTime();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (perSecond) (sustained rate of each client)
+	 * @param (burst) (requests a client may send at once after being idle)
+	 * @param (stripes) (number of buckets, rounded up to a power of 2)
+	 */
+	public RateLimiter(double perSecond, int burst, int stripes)
+	{
+		if (perSecond <= 0 || burst < 1 || stripes < 1)
+			throw new IllegalArgumentException("Rate, burst and stripes must be positive");
+		this.stripes = new AtomicLongArray(stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1);
+		this.mask = this.stripes.length() - 1;
+		this.interval = Math.max(1, (long) (1e9 / perSecond));
+		this.tolerance = interval * (burst - 1);
+	}
+
+	/**
+	 * @param (client) (client identity)
+	 * @return (wait) (0 if request is admitted, otherwise nanoseconds until it would be)
+	 */
+	public long acquire(CharSequence client)
+	{
+		return acquire(Hashing.hash64(client));
+	}
+
+	/**
+	 * @param (hash) (hash of client identity)
+	 * @return (wait) (0 if request is admitted, otherwise nanoseconds until it would be)
+	 */
+	public long acquire(long hash)
+	{
+		int stripe = (int) (hash & mask);
+		long now = System.nanoTime() - origin;
+		while (true)
+		{
+			long full = stripes.get(stripe);
+			long start = Math.max(full, now);
+			long wait = start - tolerance - now;
+			if (wait > 0)
+				return wait;
+			if (stripes.compareAndSet(stripe, full, start + interval))
+				return 0;
+		}
+	}
+
+	/**
+	 * This method gives back the token of an admitted request that is not served after all.
+	 *
+	 * @param (hash) (hash of client identity, as acquired)
+	 */
+	public void release(long hash)
+	{
+		stripes.addAndGet((int) (hash & mask), -interval);
+	}
+}
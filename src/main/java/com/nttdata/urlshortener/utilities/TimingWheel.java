@@ -0,0 +1,142 @@
+package com.nttdata.urlshortener.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+* This class is a hierarchical timing wheel, it fires items at their deadline
+* with O(1) cost per item, however many items are scheduled.
+* Every level has the same number of slots, one slot of a level spans
+* the whole lower level; items move down as their deadline gets close.
+* Any thread may schedule, advance must always be called by one thread at a time.
+*/
+public class TimingWheel<T>
+{
+	// slots per level, power of 2
+	private static final int BITS = 6;
+	private static final int SIZE = 1 << BITS;
+	private static final int MASK = SIZE - 1;
+
+	private final long tickMillis;
+	private final int levels;
+	// levels x slots
+	private final List<List<Entry<T>>> slots;
+	// items beyond the top level
+	private List<Entry<T>> overflow = new ArrayList<Entry<T>>();
+	// items scheduled since last advance
+	private final ConcurrentLinkedQueue<Entry<T>> inbox = new ConcurrentLinkedQueue<Entry<T>>();
+	private long currentTick;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param (tickMillis) (resolution)
+	 * @param (levels) (number of levels, 64^levels ticks are covered without overflow)
+	 * @param (nowMillis) (current time)
+	 */
+	public TimingWheel(long tickMillis, int levels, long nowMillis)
+	{
+		this.tickMillis = tickMillis;
+		this.levels = levels;
+		this.slots = new ArrayList<List<Entry<T>>>(levels * SIZE);
+		for (int i = 0; i < levels * SIZE; i++)
+			slots.add(new ArrayList<Entry<T>>());
+		this.currentTick = nowMillis / tickMillis;
+	}
+
+	/**
+	 * This method is thread safe and lock-free.
+	 *
+	 * @param (item) (anything)
+	 * @param (deadlineMillis) (time item is due)
+	 */
+	public void schedule(T item, long deadlineMillis)
+	{
+		inbox.add(new Entry<T>(item, (deadlineMillis + tickMillis - 1) / tickMillis));
+	}
+
+	/**
+	 * This method moves the wheel to current time and fires all due items.
+	 *
+	 * @param (nowMillis) (current time)
+	 * @param (expired) (receives due items)
+	 */
+	public void advance(long nowMillis, Consumer<T> expired)
+	{
+		Entry<T> entry;
+		while ((entry = inbox.poll()) != null)
+			place(entry, expired);
+
+		long targetTick = nowMillis / tickMillis;
+		while (currentTick < targetTick)
+		{
+			currentTick++;
+			// entries of the top levels move down first
+			for (int level = levels - 1; level > 0; level--)
+				if ((currentTick & ((1L << (BITS * level)) - 1)) == 0)
+					cascade(level, expired);
+			if ((currentTick & ((1L << (BITS * levels)) - 1)) == 0)
+			{
+				List<Entry<T>> far = overflow;
+				overflow = new ArrayList<Entry<T>>();
+				for (Entry<T> item : far)
+					place(item, expired);
+			}
+			List<Entry<T>> due = slot(0, (int) (currentTick & MASK));
+			for (Entry<T> item : due)
+				expired.accept(item.item);
+			due.clear();
+		}
+	}
+
+	private void cascade(int level, Consumer<T> expired)
+	{
+		List<Entry<T>> slot = slot(level, (int) ((currentTick >>> (BITS * level)) & MASK));
+		if (slot.isEmpty())
+			return;
+		List<Entry<T>> entries = new ArrayList<Entry<T>>(slot);
+		slot.clear();
+		for (Entry<T> item : entries)
+			place(item, expired);
+	}
+
+	private void place(Entry<T> entry, Consumer<T> expired)
+	{
+		if (entry.deadlineTick <= currentTick)
+		{
+			expired.accept(entry.item);
+			return;
+		}
+		for (int level = 0; level < levels; level++)
+		{
+			int shift = BITS * level;
+			// distance in slots of this level
+			long distance = (entry.deadlineTick >>> shift) - (currentTick >>> shift);
+			if (distance < SIZE)
+			{
+				slot(level, (int) ((entry.deadlineTick >>> shift) & MASK)).add(entry);
+				return;
+			}
+		}
+		overflow.add(entry);
+	}
+
+	private List<Entry<T>> slot(int level, int index)
+	{
+		return slots.get(level * SIZE + index);
+	}
+
+	private static final class Entry<T>
+	{
+		final T item;
+		final long deadlineTick;
+
+		Entry(T item, long deadlineTick)
+		{
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+}
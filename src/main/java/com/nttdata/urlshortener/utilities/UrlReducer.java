@@ -1,211 +1,256 @@
 package com.nttdata.urlshortener.utilities;
 
-import java.net.URL;
-import java.util.HashMap;
-import java.util.Random;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 
 /**
-* This class encapsulates all routines needed to generate 8 character long key 
-* to construct short URL
+* This class encapsulates all routines needed to generate base 62 key 
+* to construct short URL.
+* Keys are unique sequence numbers of at most MAX_GENERATED_LENGTH digits.
+* Custom short URLs share the base 62 key space, a generated key already taken by
+* a custom one is skipped for the next number (see LinkService.createGenerated).
 */
 public class UrlReducer
 {
-	private final Logger log = LoggerFactory.getLogger(this.getClass());
-	// storage for generated keys
-	// key-url map
-	private HashMap<String, String> keyUrlMap = new HashMap<String, String>();
-	// url-key map to quickly check whether an url is already entered in our system
-	private HashMap<String, String> urlKeyMap = new HashMap<String, String>();
 	// used to generate URLs for a custom domain name
 	private String domain;
-	// array for character to number mapping
-	private char charBuffer[] = new char[62];;
-	// generate random integers
-	private Random random = new Random();
-	// the key length in URL
-	private int KEY_LENGTH = 7;
+	// source of unique numbers encoded into keys
+	private LongSupplier sequence;
+	// per thread buffer keys are encoded into
+	private final ThreadLocal<char[]> keyBuffer = ThreadLocal.withInitial(() -> new char[MAX_KEY_LENGTH]);
 
 	/**
 	 * Class constructor.
+	 * Keys are numbered from 1 in memory, use for testing only.
 	 * 
 	 * @param (domain) (It is a domain name of current application)
 	 */
 	public UrlReducer(String domain)
 	{
-		this.domain = cleanUrl(domain);
-		populateCharBuffer();
+		this(domain, new AtomicLong(1)::getAndIncrement);
 	}
 
 	/**
-	 * this method randomly fill s buffer for key generation routine
+	 * Class constructor.
 	 * 
-	 * @return (void)
+	 * @param (domain) (It is a domain name of current application)
+	 * @param (sequence) (source of unique numbers, i.e. ranges leased from DB)
 	 */
-	private void populateCharBuffer()
+	public UrlReducer(String domain, LongSupplier sequence)
 	{
-		for (int i = 0; i < 62; i++)
-		{
-			int n = 0;
-			if (i < 10)
-				n = i + 48;
-			else if (i > 9 && i <= 35)
-				n = i + 55;
-			else
-				n = i + 61;
-			charBuffer[i] = (char) n;
-		}
+		this.domain = canonicalUrl(domain);
+		this.sequence = sequence;
 	}
 
 	/**
-	 * This is a wrapper method for all key generation procedures
+	 * This is a wrapper method for all key generation procedures.
+	 * It always creates a new key, already shortened URLs are looked up
+	 * by hashUrl in DB (see LinkService.getByLongUrl)
 	 *
 	 * @param (longURL) (Original long URL supplied by user)
-	 * @return (reducedUrl) (reduced URL)
+	 * @return (reducedUrl) (reduced URL, empty if URL is not valid)
 	 */
 	public String reduceUrl(String longURL)
 	{
-		String reducedUrl = "";
-		if (isUrlValid(longURL))
-		{
-			longURL = cleanUrl(longURL);
-			// create a new key if it is not stored in collection
-			// otherwise reuse from collection
-			reducedUrl = urlKeyMap.containsKey(longURL) ? urlKeyMap.get(longURL) : createKey(longURL);
-		}
-		return reducedUrl;
+		return isUrlValid(longURL) ? generateKey() : "";
 	}
 
 	/**
-	 * This is a key generating reverse routine for testing purposes only,
-	 * It's never used in the application
+	 * This method returns the form of URL used to detect already shortened URLs,
+	 * URLs differing only in scheme, host case, default port, percent-encoding
+	 * or trailing slash are the same (see UrlScanner)
 	 *
-	 * @param (shortURL) (reduced URL)
-	 * @return (longURL) (Original long URL supplied by user)
+	 * @param (longURL) (Original long URL supplied by user)
+	 * @return (url) (canonical url string, url itself if it is not valid)
 	 */
-	public String expandURL(String reducedUrl)
+	public String canonicalUrl(String longURL)
 	{
-		String longURL = "";
-		String key = reducedUrl.substring(domain.length() + 1);
-		longURL = keyUrlMap.get(key);
-		return longURL;
+		UrlScanner scanner = UrlScanner.forThread();
+		return scanner.scan(longURL) ? scanner.toString() : longURL;
 	}
 
 	/**
-	 * This is a standard way to validate URL.
-	 * Exception is not a very clean way to do validation.
-	 * Using exception in program flow control is considered as ANTIPATTERN.
+	 * This method hashes canonical URL straight from scanner buffer, without allocation.
+	 *
+	 * @param (longURL) (Original long URL supplied by user)
+	 * @return (hash) (64 bit hash of canonical URL, stored as Link.longUrlHash)
+	 */
+	public long hashUrl(String longURL)
+	{
+		UrlScanner scanner = UrlScanner.forThread();
+		return Hashing.hash64(scanner.scan(longURL) ? scanner : longURL);
+	}
+
+	/**
+	 * This method validates URL in a single pass, without exceptions.
+	 * Only absolute http and https URLs are valid.
 	 *
 	 * @param (longUrl) (Original long URL supplied by user)
 	 * @return (valid) (true if valid, otherwise false)
 	 */
-	boolean isUrlValid(String longUrl)
+	public boolean isUrlValid(String longUrl)
 	{
-		boolean valid = false;
-		try
-		{
-			new URL(longUrl).toURI();
-			valid = true;
-		}
-		catch (Exception e)
-		{
-			log.error(e.getMessage());
-		}
-		return valid;
+		return UrlScanner.forThread().scan(longUrl);
 	}
 
 	/**
-	 * This method removes all fancy parts from URL.
-	 * leaving 8 characters only
+	 * This method encodes next unique number,
+	 * the only allocation is the key string itself
 	 *
-	 * @param (url) (any URL string)
-	 * @return (url) (cleaned url string)
+	 * @return (key) (generated key string)
 	 */
-	String cleanUrl(String url)
+	public String generateKey()
 	{
-		String http = "http://";
-		String https = "https://";
-		char slash = '/';
-		
-		if (url.substring(0, http.length()).equals(http))
-			url = url.substring(http.length());
+		char[] buffer = keyBuffer.get();
+		int offset = encode(sequence.getAsLong(), buffer);
+		return new String(buffer, offset, buffer.length - offset);
+	}
 
-		if (url.substring(0, https.length()).equals(https))
-			url = url.substring(https.length());
+	private static final String ALPHABET_MAP = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+	private static final int BASE = ALPHABET_MAP.length();
+	// 62^10 > Long.MAX_VALUE, so 11 characters hold any long
+	public static final int MAX_KEY_LENGTH = 11;
+	// generated keys have up to 7 characters, numbers up to 62^7 - 1 (see KeyRangeAllocator)
+	public static final int MAX_GENERATED_LENGTH = 7;
+	// 62^9 < 2^56, so up to 9 characters are packed below the length byte
+	public static final int MAX_PACKED_LENGTH = 9;
+	// base 62 digit of ASCII characters, -1 if character is not a digit
+	private static final byte[] DIGITS = new byte[128];
+
+	static
+	{
+		Arrays.fill(DIGITS, (byte) -1);
+		for (int i = 0; i < BASE; i++)
+			DIGITS[ALPHABET_MAP.charAt(i)] = (byte) i;
+	}
 
-		if (url.charAt(url.length() - 1) == slash)
-			url = url.substring(0, url.length() - 1);
-		return url;
+	public static String encode(long indexNumber)
+	{
+		char[] buffer = new char[MAX_KEY_LENGTH];
+		int offset = encode(indexNumber, buffer);
+		return new String(buffer, offset, buffer.length - offset);
 	}
 
 	/**
-	 * This method stores generated key into two cross-maps.
+	 * This method writes base 62 digits to the end of buffer
 	 *
-	 * @param (longURL) (Original long URL supplied by user)
-	 * @return (key) (generated key string)
+	 * @param (indexNumber) (non negative number)
+	 * @param (buffer) (buffer at least MAX_KEY_LENGTH long)
+	 * @return (offset) (index of the first digit in buffer)
 	 */
-	private String createKey(String longURL)
+	public static int encode(long indexNumber, char[] buffer)
+	{
+		int offset = buffer.length;
+		do
+		{
+			buffer[--offset] = ALPHABET_MAP.charAt((int) (indexNumber % BASE));
+			indexNumber /= BASE;
+		}
+		while (indexNumber > 0);
+		return offset;
+	}
+
+	public static long decode(String str)
 	{
-		String key = generateKey();
-		keyUrlMap.put(key, longURL);
-		urlKeyMap.put(longURL, key);
-		return key;
+		long num = 0;
+		int length = str.length();
+
+		for (int i = 0; i < length; i++)
+			num = num * BASE + digit(str.charAt(i));
+
+		return num;
 	}
 
 	/**
-	 * This method generates key randomly taking characters from buffer
+	 * This method packs a short URL into a long: length in the top byte, decoded value below,
+	 * so keys differing only in leading 'a' (zero) digits stay distinct.
 	 *
-	 * @return (key) (generated key string)
+	 * @param (str) (short URL)
+	 * @return (key) (packed short URL, -1 if it is not base 62 or longer than MAX_PACKED_LENGTH)
 	 */
-	private String generateKey()
+	public static long pack(CharSequence str)
 	{
-		String key = "";
-		while (true)
+		int length = str.length();
+		if (length == 0 || length > MAX_PACKED_LENGTH)
+			return -1;
+		long num = 0;
+		for (int i = 0; i < length; i++)
 		{
-			key = "";
-			for (int i = 0; i <= KEY_LENGTH; i++)
-				key += charBuffer[random.nextInt(62)];
-			if (!keyUrlMap.containsKey(key))
-				break;
+			int digit = digit(str.charAt(i));
+			if (digit < 0)
+				return -1;
+			num = num * BASE + digit;
 		}
-		return key;
+		return (long) length << 56 | num;
 	}
 
-	/**************************** all stuff below is just Yuri's playground. One can safely delete it  *********/
-	
-	private static final String ALPHABET_MAP = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-	private static final int BASE = ALPHABET_MAP.length();
+	/**
+	 * This method tells whether a short URL has the form of generated keys:
+	 * 1 to MAX_GENERATED_LENGTH base 62 digits without a leading 'a' (zero digit).
+	 *
+	 * @param (key) (short URL)
+	 * @return (generated) (true if the sequence may hand out the key)
+	 */
+	public static boolean isGeneratedForm(CharSequence key)
+	{
+		int length = key.length();
+		if (length == 0 || length > MAX_GENERATED_LENGTH || digit(key.charAt(0)) <= 0)
+			return false;
+		for (int i = 1; i < length; i++)
+			if (digit(key.charAt(i)) < 0)
+				return false;
+		return true;
+	}
 
-	public static String encode(int indexNumber)
+	private static int digit(char c)
 	{
-		StringBuilder sb = new StringBuilder();
+		return c < 128 ? DIGITS[c] : -1;
+	}
 
-		while (indexNumber > 0)
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * This method encodes URL for a Location header: spaces, control and non ASCII characters
+	 * are percent-encoded as UTF-8, everything else is left as stored.
+	 *
+	 * @param (url) (long URL)
+	 * @return (location) (header value, url itself if nothing needs encoding)
+	 */
+	public static String toLocation(String url)
+	{
+		int length = url.length();
+		int i = 0;
+		while (i < length && isPrintable(url.charAt(i)))
+			i++;
+		if (i == length)
+			return url;
+		StringBuilder location = new StringBuilder(length + 16).append(url, 0, i);
+		for (byte b : url.substring(i).getBytes(StandardCharsets.UTF_8))
 		{
-			sb.append(ALPHABET_MAP.charAt(indexNumber % BASE));
-			indexNumber /= BASE;
+			int c = b & 0xFF;
+			if (isPrintable((char) c))
+				location.append((char) c);
+			else
+				location.append('%').append(HEX[c >> 4]).append(HEX[c & 15]);
 		}
-		return sb.reverse().toString();
+		return location.toString();
 	}
 
-	public static int decode(String str)
+	private static boolean isPrintable(char c)
 	{
-		int num = 0;
-		int length = str.length();
-
-		for (int i = 0; i < length; i++)
-			num = num * BASE + ALPHABET_MAP.indexOf(str.charAt(i));
-
-		return num;
+		return c > 0x20 && c < 0x7F;
 	}
 
+	/**************************** all stuff below is just Yuri's playground. One can safely delete it  *********/
+
 	public static void main(String args[])
 	{
 		UrlReducer reducer = new UrlReducer("www.tinyurl.com/");
 		String encoded = reducer.encode(123);
-		int decoded = decode("b9");
+		long decoded = decode("b9");
 		System.out.println("Encoding for 123 is " + encode(123));
 		System.out.println("Decoding for b9 is " + decode("b9"));
 
@@ -215,7 +260,7 @@ public class UrlReducer
 
 		for (int i = 0; i < urls.length; i++)
 		{
-			System.out.println("URL:" + urls[i] + "\tTiny: " + reducer.reduceUrl(urls[i]) + "\tExpanded: " + reducer.expandURL(reducer.reduceUrl(urls[i])));
+			System.out.println("URL:" + urls[i] + "\tTiny: " + reducer.reduceUrl(urls[i]) + "\tHash: " + reducer.hashUrl(urls[i]));
 		}
 	}
 }
\ No newline at end of file
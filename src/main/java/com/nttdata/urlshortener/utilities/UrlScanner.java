@@ -0,0 +1,353 @@
+package com.nttdata.urlshortener.utilities;
+
+import java.util.Arrays;
+
+/**
+* This class validates and canonicalizes an http(s) URL in one pass over its characters,
+* without exceptions. Canonical form is the key used to detect already shortened URLs:
+* scheme is dropped (http and https are the same), host is lower cased,
+* default port is dropped, percent-encoding is normalized (upper case hex, unreserved
+* characters decoded, non-ASCII characters encoded as UTF-8) and one trailing slash of the path
+* is removed (a slash ending the query or fragment is significant).
+* Canonical form is written to a per thread buffer this object exposes as CharSequence,
+* so it can be hashed without allocation; toString is the only allocation.
+* Instances are not thread safe, use forThread.
+*/
+public final class UrlScanner implements CharSequence
+{
+	private static final ThreadLocal<UrlScanner> SCANNERS = ThreadLocal.withInitial(UrlScanner::new);
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	// RFC 3986 character classes of ASCII characters
+	private static final int UNRESERVED = 1;
+	private static final int SUB_DELIM = 2;
+	private static final int PCHAR_EXTRA = 4;
+	private static final int PATH_EXTRA = 8;
+	private static final byte[] CLASSES = new byte[128];
+
+	static
+	{
+		for (char c = 'a'; c <= 'z'; c++)
+			CLASSES[c] = UNRESERVED;
+		for (char c = 'A'; c <= 'Z'; c++)
+			CLASSES[c] = UNRESERVED;
+		for (char c = '0'; c <= '9'; c++)
+			CLASSES[c] = UNRESERVED;
+		for (char c : "-._~".toCharArray())
+			CLASSES[c] = UNRESERVED;
+		for (char c : "!$&'()*+,;=".toCharArray())
+			CLASSES[c] = SUB_DELIM;
+		CLASSES[':'] = PCHAR_EXTRA;
+		CLASSES['@'] = PCHAR_EXTRA;
+		CLASSES['/'] = PATH_EXTRA;
+		CLASSES['?'] = PATH_EXTRA;
+	}
+
+	// canonical form of the last valid URL, grows once for long URLs
+	private char[] buffer = new char[256];
+	private int length;
+
+	private UrlScanner()
+	{
+	}
+
+	/**
+	 * @return (scanner) (instance of the calling thread)
+	 */
+	public static UrlScanner forThread()
+	{
+		return SCANNERS.get();
+	}
+
+	/**
+	 * This method scans URL, if it is valid this object holds its canonical form.
+	 *
+	 * @param (url) (URL supplied by user)
+	 * @return (valid) (true if url is an absolute http or https URL)
+	 */
+	public boolean scan(CharSequence url)
+	{
+		length = 0;
+		if (url == null)
+			return false;
+		// surrounding white space is ignored, as by java.net.URL
+		int start = 0;
+		int end = url.length();
+		while (start < end && url.charAt(start) <= ' ')
+			start++;
+		while (end > start && url.charAt(end - 1) <= ' ')
+			end--;
+
+		// scheme
+		int i = start;
+		while (i < end && isSchemeChar(url.charAt(i), i == start))
+			i++;
+		if (i == end || url.charAt(i) != ':')
+			return false;
+		int defaultPort;
+		if (regionMatches(url, start, i, "http"))
+			defaultPort = 80;
+		else if (regionMatches(url, start, i, "https"))
+			defaultPort = 443;
+		else
+			return false;
+		i++;
+		if (i + 2 > end || url.charAt(i) != '/' || url.charAt(i + 1) != '/')
+			return false;
+		i += 2;
+
+		// authority, up to the first '/', '?' or '#'
+		int authorityEnd = i;
+		int at = -1;
+		for (; authorityEnd < end; authorityEnd++)
+		{
+			char c = url.charAt(authorityEnd);
+			if (c == '/' || c == '?' || c == '#')
+				break;
+			if (c == '@')
+				at = authorityEnd;
+		}
+		if (at >= 0)
+		{
+			for (; i < at; i++)
+			{
+				char c = url.charAt(i);
+				if (c == '%')
+				{
+					if (!escape(url, i, end, false))
+						return false;
+					i += 2;
+				}
+				else if (c < 128 && (CLASSES[c] & (UNRESERVED | SUB_DELIM)) != 0 || c == ':')
+					append(c);
+				else
+					return false;
+			}
+			append('@');
+			i = at + 1;
+		}
+		i = host(url, i, authorityEnd);
+		if (i < 0)
+			return false;
+		if (i < authorityEnd)
+		{
+			if (url.charAt(i++) != ':')
+				return false;
+			int port = 0;
+			int digits = 0;
+			for (; i < authorityEnd; i++, digits++)
+			{
+				char c = url.charAt(i);
+				if (c < '0' || c > '9')
+					return false;
+				port = port * 10 + (c - '0');
+				if (port > 65535)
+					return false;
+			}
+			if (digits > 0 && port != defaultPort)
+			{
+				append(':');
+				appendNumber(port);
+			}
+		}
+
+		// path, query and fragment
+		boolean fragment = false;
+		boolean path = true;
+		while (i < end)
+		{
+			char c = url.charAt(i);
+			if (c == '#')
+			{
+				if (fragment)
+					return false;
+				fragment = true;
+				path = false;
+				append(c);
+				i++;
+			}
+			else if (c == '%')
+			{
+				if (!escape(url, i, end, false))
+					return false;
+				i += 3;
+			}
+			else if (c < 128)
+			{
+				if (CLASSES[c] == 0)
+					return false;
+				if (c == '?')
+					path = false;
+				append(c);
+				i++;
+			}
+			else
+			{
+				int codePoint = Character.codePointAt(url, i);
+				if (codePoint == c && Character.isSurrogate(c) || Character.isISOControl(codePoint) || Character.isSpaceChar(codePoint))
+					return false;
+				appendUtf8(codePoint);
+				i += Character.charCount(codePoint);
+			}
+		}
+
+		if (path && buffer[length - 1] == '/')
+			length--;
+		return true;
+	}
+
+	/**
+	 * This method copies host lower cased, IPv6 literal or registered name.
+	 *
+	 * @return (index) (position after host, -1 if host is empty or invalid)
+	 */
+	private int host(CharSequence url, int i, int authorityEnd)
+	{
+		int hostStart = length;
+		if (i < authorityEnd && url.charAt(i) == '[')
+		{
+			append('[');
+			for (i++; i < authorityEnd && url.charAt(i) != ']'; i++)
+			{
+				char c = lowerCase(url.charAt(i));
+				if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c == ':' || c == '.'))
+					return -1;
+				append(c);
+			}
+			if (i == authorityEnd || length == hostStart + 1)
+				return -1;
+			append(']');
+			return i + 1;
+		}
+		for (; i < authorityEnd; i++)
+		{
+			char c = url.charAt(i);
+			if (c == ':')
+				break;
+			if (c == '%')
+			{
+				if (!escape(url, i, authorityEnd, true))
+					return -1;
+				i += 2;
+			}
+			else if (c < 128 && (CLASSES[c] & (UNRESERVED | SUB_DELIM)) == 0 || Character.isISOControl(c) || Character.isSpaceChar(c))
+				return -1;
+			else
+				// internationalized names are kept as they are
+				append(c < 128 ? lowerCase(c) : Character.toLowerCase(c));
+		}
+		return length == hostStart ? -1 : i;
+	}
+
+	/**
+	 * This method normalizes one percent-encoded octet at index i.
+	 */
+	private boolean escape(CharSequence url, int i, int end, boolean lowerCase)
+	{
+		if (i + 3 > end)
+			return false;
+		int high = Character.digit(url.charAt(i + 1), 16);
+		int low = Character.digit(url.charAt(i + 2), 16);
+		if (high < 0 || low < 0)
+			return false;
+		int octet = high << 4 | low;
+		if (octet < 128 && CLASSES[octet] == UNRESERVED)
+			append(lowerCase ? lowerCase((char) octet) : (char) octet);
+		else
+			appendOctet(octet);
+		return true;
+	}
+
+	private void appendUtf8(int codePoint)
+	{
+		if (codePoint < 0x800)
+		{
+			appendOctet(0xC0 | codePoint >> 6);
+		}
+		else if (codePoint < 0x10000)
+		{
+			appendOctet(0xE0 | codePoint >> 12);
+			appendOctet(0x80 | codePoint >> 6 & 0x3F);
+		}
+		else
+		{
+			appendOctet(0xF0 | codePoint >> 18);
+			appendOctet(0x80 | codePoint >> 12 & 0x3F);
+			appendOctet(0x80 | codePoint >> 6 & 0x3F);
+		}
+		appendOctet(0x80 | codePoint & 0x3F);
+	}
+
+	private void appendOctet(int octet)
+	{
+		append('%');
+		append(HEX[octet >> 4]);
+		append(HEX[octet & 0xF]);
+	}
+
+	private void appendNumber(int number)
+	{
+		int digits = number < 10 ? 1 : number < 100 ? 2 : number < 1000 ? 3 : number < 10000 ? 4 : 5;
+		for (int i = 0; i < digits; i++)
+			append('0');
+		for (int i = length - 1; i >= length - digits; i--, number /= 10)
+			buffer[i] = (char) ('0' + number % 10);
+	}
+
+	private void append(char c)
+	{
+		if (length == buffer.length)
+			buffer = Arrays.copyOf(buffer, length * 2);
+		buffer[length++] = c;
+	}
+
+	private static char lowerCase(char c)
+	{
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private static boolean isSchemeChar(char c, boolean first)
+	{
+		boolean letter = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+		return first ? letter : letter || c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.';
+	}
+
+	// case insensitive comparison of url[from, to) with lower case scheme
+	private static boolean regionMatches(CharSequence url, int from, int to, String scheme)
+	{
+		if (to - from != scheme.length())
+			return false;
+		for (int i = from; i < to; i++)
+			if (lowerCase(url.charAt(i)) != scheme.charAt(i - from))
+				return false;
+		return true;
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (index >= length)
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		return buffer[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return toString().substring(start, end);
+	}
+
+	/**
+	 * @return (url) (canonical form of the last valid URL)
+	 */
+	@Override
+	public String toString()
+	{
+		return new String(buffer, 0, length);
+	}
+}
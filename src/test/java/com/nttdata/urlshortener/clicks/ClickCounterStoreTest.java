@@ -0,0 +1,52 @@
+package com.nttdata.urlshortener.clicks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClickCounterStoreTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void drainedClicksArePendingUntilSettled()
+	{
+		ClickCounterStore store = new ClickCounterStore(new ClickJournal(false, folder.getRoot().getPath(), 4096));
+		store.add("abc", 3);
+		store.add("def", 2);
+		Map<String, Long> drained = store.drain();
+		assertEquals(3, (long) drained.get("abc"));
+		// drained, not stored yet
+		store.increment("abc");
+		assertEquals(4, store.pending("abc"));
+		assertEquals(6, store.pendingClicks());
+		assertEquals(4, (long) store.pendingCounts().get("abc"));
+		// abc stored to DB
+		store.settled(Collections.singleton("abc"));
+		assertEquals(1, store.pending("abc"));
+		assertEquals(2, store.pending("def"));
+		store.commit();
+		assertEquals(1, store.pending("abc"));
+		assertEquals(0, store.pending("def"));
+	}
+
+	@Test
+	public void clicksAddedBackAfterFailedStoreAreCountedOnce()
+	{
+		ClickCounterStore store = new ClickCounterStore(new ClickJournal(false, folder.getRoot().getPath(), 4096));
+		store.add("abc", 3);
+		store.drain();
+		// store failed, clicks return to the active generation
+		store.add("abc", 3);
+		store.settled(Collections.singleton("abc"));
+		store.commit();
+		assertEquals(3, store.pending("abc"));
+		assertEquals(3, (long) store.drain().get("abc"));
+	}
+}
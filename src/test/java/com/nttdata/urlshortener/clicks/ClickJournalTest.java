@@ -0,0 +1,165 @@
+package com.nttdata.urlshortener.clicks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClickJournalTest
+{
+	private static final int RECORD = 32;
+	private static final String FIRST_SEGMENT = "clicks-0000000000000000.journal";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void clicksAreReplayedAfterCrash()
+	{
+		ClickJournal.Log log = journal().newLog();
+		log.append("abc", 3);
+		log.append("def", 1);
+		log.append("abc", 2);
+		Map<String, Long> clicks = new HashMap<String, Long>();
+		journal().recover((shortUrl, count) -> clicks.merge(shortUrl, count, Long::sum));
+		assertEquals(map("abc", 5, "def", 1), clicks);
+	}
+
+	@Test
+	public void longAndMultiByteShortUrlsTakeContinuationRecords()
+	{
+		String[] shortUrls = {
+				// 24 bytes fit the first record, 25 and 55 need one and two continuations
+				repeat("a", 24), repeat("b", 25), repeat("c", 54), repeat("d", 55),
+				// 2, 3 and 4 byte characters, split across records
+				repeat("ü", 20), repeat("€", 11), repeat("😀", 9), "x" + repeat("é", 12) + "y" };
+		ClickJournal.Log log = journal().newLog();
+		for (int i = 0; i < shortUrls.length; i++)
+			log.append(shortUrls[i], i + 1);
+		Map<String, Long> clicks = recover();
+		assertEquals(shortUrls.length, clicks.size());
+		for (int i = 0; i < shortUrls.length; i++)
+			assertEquals(shortUrls[i], Long.valueOf(i + 1), clicks.get(shortUrls[i]));
+	}
+
+	@Test
+	public void tornRecordsAreSkipped() throws IOException
+	{
+		ClickJournal.Log log = journal().newLog();
+		// records 0, 1, 2-3, 4-5 and 6
+		log.append("first", 1);
+		log.append("second", 2);
+		log.append(repeat("t", 40), 3);
+		log.append(repeat("u", 40), 4);
+		log.append("last", 5);
+		File segment = new File(folder.getRoot(), FIRST_SEGMENT);
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+		{
+			// payload changed after the checksum was written
+			file.seek(1 * RECORD + 9);
+			file.write('X');
+			// continuation never written, its first record alone is not taken
+			file.seek(3 * RECORD);
+			file.write(0);
+			// first record lost, its continuation alone is not taken
+			file.seek(4 * RECORD);
+			file.write(0);
+		}
+		assertEquals(map("first", 1, "last", 5), recover());
+	}
+
+	@Test
+	public void reservedButUnwrittenRecordsAreHoles()
+	{
+		ClickJournal.Log log = journal().newLog();
+		log.append("abc", 1);
+		// rest of the segment reads as zeros
+		assertEquals(map("abc", 1), recover());
+	}
+
+	@Test
+	public void entriesCrossingSegmentsStartNewSegment()
+	{
+		// 3 records per segment, an entry of 2 records does not fit behind 2 single ones
+		ClickJournal journal = new ClickJournal(true, folder.getRoot().getPath(), 3 * RECORD);
+		ClickJournal.Log log = journal.newLog();
+		log.append("a", 1);
+		log.append("b", 1);
+		log.append(repeat("c", 30), 1);
+		log.append("d", 1);
+		assertEquals(map("a", 1, "b", 1, repeat("c", 30), 1, "d", 1), recover());
+		assertEquals(2, segments());
+	}
+
+	@Test
+	public void recoveredSegmentsAreAdoptedSoASecondCrashDoesNotDoubleCount()
+	{
+		journal().newLog().append("abc", 3);
+		// second run replays and keeps counting into the adopted log
+		Map<String, Long> first = new HashMap<String, Long>();
+		ClickJournal second = journal();
+		ClickJournal.Log log = second.recover((shortUrl, count) -> first.merge(shortUrl, count, Long::sum));
+		assertEquals(map("abc", 3), first);
+		log.append("abc", 1);
+		log.append("def", 2);
+		// new records go to a new segment, the recovered one is not written again
+		assertEquals(2, segments());
+		// crash again before clicks are stored
+		ClickJournal third = journal();
+		Map<String, Long> again = new HashMap<String, Long>();
+		ClickJournal.Log adopted = third.recover((shortUrl, count) -> again.merge(shortUrl, count, Long::sum));
+		assertEquals(map("abc", 4, "def", 2), again);
+		// clicks stored, all segments of the log are deleted
+		third.delete(adopted);
+		assertEquals(0, segments());
+		assertTrue(recover().isEmpty());
+	}
+
+	@Test
+	public void disabledJournalWritesNothing()
+	{
+		new ClickJournal(false, folder.getRoot().getPath(), 4096).newLog().append("abc", 1);
+		assertEquals(0, segments());
+	}
+
+	private ClickJournal journal()
+	{
+		return new ClickJournal(true, folder.getRoot().getPath(), 4096);
+	}
+
+	private Map<String, Long> recover()
+	{
+		Map<String, Long> clicks = new HashMap<String, Long>();
+		journal().recover((shortUrl, count) -> clicks.merge(shortUrl, count, Long::sum));
+		return clicks;
+	}
+
+	private int segments()
+	{
+		return folder.getRoot().list((dir, name) -> name.endsWith(".journal")).length;
+	}
+
+	private static String repeat(String s, int times)
+	{
+		StringBuilder repeated = new StringBuilder();
+		for (int i = 0; i < times; i++)
+			repeated.append(s);
+		return repeated.toString();
+	}
+
+	private static Map<String, Long> map(Object... pairs)
+	{
+		Map<String, Long> map = new HashMap<String, Long>();
+		for (int i = 0; i < pairs.length; i += 2)
+			map.put((String) pairs[i], ((Integer) pairs[i + 1]).longValue());
+		return map;
+	}
+}
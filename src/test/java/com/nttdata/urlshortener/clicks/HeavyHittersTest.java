@@ -0,0 +1,152 @@
+package com.nttdata.urlshortener.clicks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.nttdata.urlshortener.model.HotLink;
+import com.nttdata.urlshortener.utilities.Hashing;
+
+public class HeavyHittersTest
+{
+	@Test
+	public void smallerCandidateIsDisplacedOnlyByHigherEstimate()
+	{
+		// two candidate slots, wide sketch counts exactly
+		HeavyHitters hitters = new HeavyHitters(3600, 1, 1 << 16, 4, 2, 10);
+		String a = twoSlotKey("a");
+		String b = twoSlotKey("b");
+		String c = twoSlotKey("c");
+		record(hitters, a, 5);
+		record(hitters, b, 3);
+		// c reaches 3, not above b
+		record(hitters, c, 3);
+		assertEquals(clicks(a, 5, b, 3), top(hitters));
+		// c beats b, the smaller candidate
+		record(hitters, c, 1);
+		assertEquals(clicks(a, 5, c, 4), top(hitters));
+		// b reaches 4, equal to c is not enough
+		record(hitters, b, 1);
+		assertEquals(clicks(a, 5, c, 4), top(hitters));
+		record(hitters, b, 1);
+		assertEquals(clicks(a, 5, b, 5), top(hitters));
+	}
+
+	@Test
+	public void topIsOrderedAndLimited()
+	{
+		HeavyHitters hitters = new HeavyHitters(3600, 1, 1 << 16, 4, 64, 10);
+		for (int i = 1; i <= 5; i++)
+			record(hitters, "link" + i, i * 10);
+		List<HotLink> top = hitters.top(3, 3600000);
+		assertEquals(3, top.size());
+		assertEquals("link5", top.get(0).getShortUrl());
+		assertEquals(50, top.get(0).getClicks());
+		assertEquals("link4", top.get(1).getShortUrl());
+		assertEquals("link3", top.get(2).getShortUrl());
+	}
+
+	@Test
+	public void windowSelectsSlicesAcrossRollOver() throws InterruptedException
+	{
+		// 1 second slices, 3 kept
+		HeavyHitters hitters = new HeavyHitters(1, 3, 1 << 16, 4, 64, 10);
+		awaitNextSlice();
+		record(hitters, "old", 3);
+		record(hitters, "both", 2);
+		awaitNextSlice();
+		record(hitters, "new", 1);
+		record(hitters, "both", 3);
+		// current slice only
+		assertEquals(clicks("new", 1, "both", 3), asMap(hitters.top(10, 1000)));
+		// both slices, estimates summed over the window
+		assertEquals(clicks("old", 3, "both", 5, "new", 1), asMap(hitters.top(10, 2000)));
+		// window is rounded up to whole slices
+		assertEquals(clicks("old", 3, "both", 5, "new", 1), asMap(hitters.top(10, 1001)));
+		awaitNextSlice();
+		awaitNextSlice();
+		// first slice is older than the longest window
+		assertEquals(clicks("new", 1, "both", 3), asMap(hitters.top(10, 3000)));
+		// slice of the same index is overwritten on roll over
+		record(hitters, "next", 1);
+		assertEquals(clicks("next", 1), asMap(hitters.top(10, 1000)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void windowLongerThanSlicesIsRejected()
+	{
+		new HeavyHitters(60, 60, 1024, 4, 64, 10).top(10, 3600001);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void kAboveMaximumIsRejected()
+	{
+		new HeavyHitters(60, 60, 1024, 4, 64, 10).top(11, 60000);
+	}
+
+	@Test
+	public void parseWindow()
+	{
+		assertEquals(30000, HeavyHitters.parseWindow("30s"));
+		assertEquals(300000, HeavyHitters.parseWindow("5m"));
+		assertEquals(300000, HeavyHitters.parseWindow("5"));
+		assertEquals(3600000, HeavyHitters.parseWindow(" 1H "));
+		assertEquals(86400000, HeavyHitters.parseWindow("1d"));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void parseWindowRejectsUnknownUnit()
+	{
+		HeavyHitters.parseWindow("5w");
+	}
+
+	// short URL whose two candidate slots differ in a table of two
+	private static String twoSlotKey(String prefix)
+	{
+		for (int i = 0;; i++)
+		{
+			long hash = Hashing.hash64(prefix + i);
+			if ((hash & 1) != (hash >>> 32 & 1))
+				return prefix + i;
+		}
+	}
+
+	private static void record(HeavyHitters hitters, String shortUrl, int clicks)
+	{
+		for (int i = 0; i < clicks; i++)
+			hitters.record(shortUrl);
+	}
+
+	private static Map<String, Long> top(HeavyHitters hitters)
+	{
+		return asMap(hitters.top(10, 3600000));
+	}
+
+	private static Map<String, Long> asMap(List<HotLink> top)
+	{
+		Map<String, Long> clicks = new HashMap<String, Long>();
+		// every short URL is listed once
+		for (HotLink link : top)
+			assertNull(clicks.put(link.getShortUrl(), link.getClicks()));
+		return clicks;
+	}
+
+	private static Map<String, Long> clicks(Object... pairs)
+	{
+		Map<String, Long> clicks = new HashMap<String, Long>();
+		for (int i = 0; i < pairs.length; i += 2)
+			clicks.put((String) pairs[i], ((Integer) pairs[i + 1]).longValue());
+		return clicks;
+	}
+
+	// sleeps into the next 1 second slice
+	private static void awaitNextSlice() throws InterruptedException
+	{
+		Thread.sleep(1000 - System.currentTimeMillis() % 1000 + 20);
+	}
+}
@@ -0,0 +1,104 @@
+package com.nttdata.urlshortener.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.servlet.ServletException;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.nttdata.urlshortener.utilities.RateLimiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AdmissionFilterTest
+{
+	// one per 1000 seconds, tokens are not refilled during a test
+	private static final double RATE = 0.001;
+
+	@Test
+	public void retryAfterIsRoundedUpToWholeSeconds()
+	{
+		assertEquals(1, AdmissionFilter.retryAfter(1));
+		assertEquals(1, AdmissionFilter.retryAfter(TimeUnit.MILLISECONDS.toNanos(999)));
+		assertEquals(1, AdmissionFilter.retryAfter(TimeUnit.SECONDS.toNanos(1)));
+		assertEquals(2, AdmissionFilter.retryAfter(TimeUnit.SECONDS.toNanos(1) + 1));
+		assertEquals(60, AdmissionFilter.retryAfter(TimeUnit.SECONDS.toNanos(60)));
+	}
+
+	@Test
+	public void throttledResponseHasRetryAfter() throws Exception
+	{
+		AdmissionFilter filter = filter(new RateLimiter(RATE, 1, 4096), null);
+		assertEquals(200, request(filter, "10.0.0.1", null).getStatus());
+		MockHttpServletResponse response = request(filter, "10.0.0.1", null);
+		assertEquals(429, response.getStatus());
+		assertEquals(1000, Long.parseLong(response.getHeader("Retry-After")));
+	}
+
+	@Test
+	public void unknownApiKeysShareTheBudgetOfTheirAddress() throws Exception
+	{
+		AdmissionFilter filter = filter(new RateLimiter(RATE, 1, 4096), null);
+		assertEquals(200, request(filter, "10.0.0.1", "made-up-1").getStatus());
+		// a new made up key is still the same client
+		assertEquals(429, request(filter, "10.0.0.1", "made-up-2").getStatus());
+		assertEquals(429, request(filter, "10.0.0.1", null).getStatus());
+		// a known key is a client of its own, wherever it comes from
+		assertEquals(200, request(filter, "10.0.0.1", "known").getStatus());
+		assertEquals(429, request(filter, "10.0.0.2", "known").getStatus());
+	}
+
+	@Test
+	public void requestTurnedAwayBySharedBudgetKeepsClientToken() throws Exception
+	{
+		RateLimiter clients = new RateLimiter(RATE, 2, 4096);
+		AdmissionFilter filter = filter(clients, new RateLimiter(RATE, 1, 1));
+		assertEquals(200, request(filter, "10.0.0.1", null).getStatus());
+		assertEquals(429, request(filter, "10.0.0.2", null).getStatus());
+		assertEquals(429, request(filter, "10.0.0.2", null).getStatus());
+		// both tokens of the second client are left
+		assertEquals(0, clients.acquire("10.0.0.2"));
+		assertEquals(0, clients.acquire("10.0.0.2"));
+	}
+
+	@Test
+	public void budgetChargesFurtherWorkToTheClient() throws Exception
+	{
+		RateLimiter clients = new RateLimiter(RATE, 3, 4096);
+		AdmissionFilter filter = filter(clients, null);
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/create/batch");
+		request.setRemoteAddr("10.0.0.1");
+		filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+		LongSupplier budget = (LongSupplier) request.getAttribute(AdmissionFilter.BUDGET);
+		// request took one token, links of the batch take the others
+		assertEquals(0, budget.getAsLong());
+		assertEquals(0, budget.getAsLong());
+		assertTrue(budget.getAsLong() > 0);
+		assertEquals(429, request(filter, "10.0.0.1", null).getStatus());
+	}
+
+	private static AdmissionFilter filter(RateLimiter clients, RateLimiter total)
+	{
+		return new AdmissionFilter("create", clients, total, "X-Api-Key", Collections.singleton("known"), new SimpleMeterRegistry());
+	}
+
+	private static MockHttpServletResponse request(AdmissionFilter filter, String address, String apiKey) throws IOException, ServletException
+	{
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/create");
+		request.setRemoteAddr(address);
+		if (apiKey != null)
+			request.addHeader("X-Api-Key", apiKey);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain());
+		return response;
+	}
+}
@@ -0,0 +1,79 @@
+package com.nttdata.urlshortener.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonType;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.nttdata.urlshortener.model.Link;
+
+public class LinkLookupCodecTest
+{
+	private final LinkLookupCodec codec = new LinkLookupCodec();
+
+	@Test
+	public void projectedFieldsRoundTrip()
+	{
+		String id = new ObjectId().toHexString();
+		Link link = new Link(id, "abc", "http://example.com/a", new Date(1000), new Date(2000), 5);
+		BsonDocument document = encode(link);
+		// stored types of Spring Data, other fields left out
+		assertEquals(BsonType.OBJECT_ID, document.get(LinkLookupCodec.ID).getBsonType());
+		assertEquals(BsonType.DATE_TIME, document.get(LinkLookupCodec.EXPIRATION).getBsonType());
+		assertEquals(4, document.size());
+		Link decoded = decode(document);
+		assertEquals(id, decoded.getId());
+		assertEquals("abc", decoded.getShortUrl());
+		assertEquals("http://example.com/a", decoded.getLongUrl());
+		assertEquals(new Date(2000), decoded.getExpiration());
+		assertNull(decoded.getCreated());
+		assertTrue(decoded.isProjected());
+	}
+
+	@Test
+	public void nullFieldsAreLeftOut()
+	{
+		Link link = new Link("custom-id", "abc", "http://example.com/a", null, null, 0);
+		BsonDocument document = encode(link);
+		assertEquals(new BsonString("custom-id"), document.get(LinkLookupCodec.ID));
+		assertEquals(3, document.size());
+		assertNull(decode(document).getExpiration());
+	}
+
+	@Test
+	public void unknownFieldsAndTypesAreSkipped()
+	{
+		BsonDocument document = new BsonDocument(LinkLookupCodec.SHORT_URL, new BsonString("abc"))
+				.append("Clicks", new BsonInt32(3))
+				.append(LinkLookupCodec.LONG_URL, new BsonInt32(1))
+				.append(LinkLookupCodec.EXPIRATION, new BsonString("never"));
+		Link decoded = decode(document);
+		assertEquals("abc", decoded.getShortUrl());
+		assertNull(decoded.getLongUrl());
+		assertNull(decoded.getExpiration());
+	}
+
+	private BsonDocument encode(Link link)
+	{
+		BsonDocument document = new BsonDocument();
+		codec.encode(new BsonDocumentWriter(document), link, EncoderContext.builder().build());
+		return document;
+	}
+
+	private Link decode(BsonDocument document)
+	{
+		return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+	}
+}
@@ -0,0 +1,67 @@
+package com.nttdata.urlshortener.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.nttdata.urlshortener.model.Link;
+
+public class ExpiryManagerTest
+{
+	// 10 ms ticks, links expiring within 60 seconds are tracked
+	private final ExpiryManager manager = new ExpiryManager(10, 60, 1000);
+
+	@Test
+	public void listenersReceiveLinkAtExpiration() throws InterruptedException
+	{
+		List<Link> expired = new CopyOnWriteArrayList<Link>();
+		manager.addListener(expired::add);
+		Link link = link("abc", System.currentTimeMillis() + 50);
+		manager.track(link);
+		manager.tick();
+		assertTrue(expired.isEmpty());
+		Thread.sleep(80);
+		manager.tick();
+		assertEquals(1, expired.size());
+		assertSame(link, expired.get(0));
+	}
+
+	@Test
+	public void linksBeyondHorizonAreNotTracked() throws InterruptedException
+	{
+		List<Link> expired = new CopyOnWriteArrayList<Link>();
+		manager.addListener(expired::add);
+		manager.track(link("abc", System.currentTimeMillis() + 120000));
+		manager.track(new Link("def", "http://example.com/def", new Date(), null, 0));
+		Thread.sleep(30);
+		manager.tick();
+		assertTrue(expired.isEmpty());
+	}
+
+	@Test
+	public void reviveForgetsExpiredShortUrl() throws InterruptedException
+	{
+		// as LinkService.expire does
+		manager.addListener(link -> manager.markGone(link.getShortUrl()));
+		manager.track(link("abc", System.currentTimeMillis() + 20));
+		assertFalse(manager.isGone("abc"));
+		Thread.sleep(50);
+		manager.tick();
+		assertTrue(manager.isGone("abc"));
+		// created again
+		manager.revive("abc");
+		assertFalse(manager.isGone("abc"));
+	}
+
+	private static Link link(String shortUrl, long expiration)
+	{
+		return new Link(shortUrl, "http://example.com/" + shortUrl, new Date(), new Date(expiration), 0);
+	}
+}
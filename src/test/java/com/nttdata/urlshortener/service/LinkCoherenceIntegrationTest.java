@@ -0,0 +1,215 @@
+package com.nttdata.urlshortener.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import org.bson.Document;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+import com.nttdata.urlshortener.clicks.ClickCounterStore;
+import com.nttdata.urlshortener.clicks.PendingClicksExchange;
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.utilities.UrlReducer;
+
+/**
+* Coherence of this node with writes of another node, through a replica set (change streams need one).
+* The other node is a plain MongoTemplate on the same database. Test is skipped when no replica set
+* is reachable at urlshortener.test.mongodb-uri, i.e. a local single node one:
+* mongod --replSet rs0, then once: mongo --eval "rs.initiate()"
+*/
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.data.mongodb.uri=${urlshortener.test.mongodb-uri:" + LinkCoherenceIntegrationTest.DEFAULT_URI + "}",
+		"spring.data.mongodb.database=" + LinkCoherenceIntegrationTest.DATABASE,
+		"urlshortener.coherence.enabled=true",
+		"urlshortener.coherence.node-id=this-node",
+		"urlshortener.coherence.publish-interval-ms=60000",
+		// links of the other node reach this one by the change stream only
+		"urlshortener.shorturl-filter.catch-up-interval-ms=3600000",
+		"urlshortener.dedup.catch-up-interval-ms=3600000",
+		"urlshortener.journal.enabled=false",
+		"urlshortener.snapshot.enabled=false" })
+public class LinkCoherenceIntegrationTest
+{
+	static final String DEFAULT_URI = "mongodb://localhost:27017/?replicaSet=rs0";
+	static final String DATABASE = "urlshortener_it";
+	private static MongoClient client;
+	// writes of another node
+	private static MongoTemplate otherNode;
+
+	@Autowired
+	private LinkService service;
+	@Autowired
+	private LinkCache cache;
+	@Autowired
+	private ShortUrlFilter shortUrlFilter;
+	@Autowired
+	private ClickCounterStore clickCounters;
+	@Autowired
+	private PendingClicksExchange exchange;
+	@Autowired
+	private UrlReducer reducer;
+
+	@BeforeClass
+	public static void connect()
+	{
+		String uri = System.getProperty("urlshortener.test.mongodb-uri", DEFAULT_URI);
+		MongoClient candidate = new MongoClient(new MongoClientURI(uri, MongoClientOptions.builder().serverSelectionTimeout(2000)));
+		boolean replicaSet;
+		try
+		{
+			replicaSet = candidate.getDatabase("admin").runCommand(new Document("isMaster", 1)).containsKey("setName");
+		}
+		catch (Exception e)
+		{
+			replicaSet = false;
+		}
+		if (!replicaSet)
+			candidate.close();
+		Assume.assumeTrue("No replica set at " + uri, replicaSet);
+		client = candidate;
+		client.dropDatabase(DATABASE);
+		otherNode = new MongoTemplate(client, DATABASE);
+	}
+
+	@AfterClass
+	public static void disconnect()
+	{
+		if (client == null)
+			return;
+		client.dropDatabase(DATABASE);
+		client.close();
+	}
+
+	@Test
+	public void insertOnOtherNodeIsSeenHere()
+	{
+		awaitStream();
+		String shortUrl = customKey();
+		// unknown here, possibly remembered as a miss, before the other node creates it
+		assertNull(service.getByShortUrl(shortUrl));
+		otherNode.insert(link(shortUrl, "http://example.com/inserted"));
+		await(() -> shortUrlFilter.mightExist(shortUrl) && service.getByShortUrl(shortUrl) != null);
+		assertEquals("http://example.com/inserted", service.getByShortUrl(shortUrl).getLongUrl());
+	}
+
+	@Test
+	public void updateOnOtherNodeRefreshesCache()
+	{
+		awaitStream();
+		String shortUrl = customKey();
+		otherNode.insert(link(shortUrl, "http://example.com/before"));
+		await(() -> service.getByShortUrl(shortUrl) != null);
+		assertNotNull(cache.get(shortUrl));
+		otherNode.updateFirst(new Query(Criteria.where("shortUrl").is(shortUrl)), Update.update("longUrl", "http://example.com/after"), Link.class);
+		await(() -> "http://example.com/after".equals(service.getByShortUrl(shortUrl).getLongUrl()));
+	}
+
+	@Test
+	public void deleteOnOtherNodeInvalidatesCache()
+	{
+		awaitStream();
+		String shortUrl = customKey();
+		otherNode.insert(link(shortUrl, "http://example.com/deleted"));
+		await(() -> service.getByShortUrl(shortUrl) != null);
+		assertNotNull(cache.get(shortUrl));
+		otherNode.remove(new Query(Criteria.where("shortUrl").is(shortUrl)), Link.class);
+		// deletes are applied once a second
+		await(() -> cache.get(shortUrl) == null);
+		assertNull(service.getByShortUrl(shortUrl));
+	}
+
+	@Test
+	public void pendingClicksOfOtherNodesAreSummed()
+	{
+		String shortUrl = customKey();
+		Date now = new Date();
+		otherNode.save(pending("node-a", now, shortUrl, 2, "other", 7), "pending_clicks");
+		otherNode.save(pending("node-b", now, shortUrl, 3), "pending_clicks");
+		// node gone without cleanup, older than three publish intervals
+		otherNode.save(pending("node-c", new Date(now.getTime() - 600000), shortUrl, 100), "pending_clicks");
+		// this node's own clicks are counted locally, not here
+		clickCounters.increment(shortUrl);
+		exchange.publish();
+		assertEquals(5, exchange.pendingElsewhere(shortUrl));
+		assertEquals(7, exchange.pendingElsewhere("other"));
+		assertEquals(0, exchange.pendingElsewhere(customKey()));
+	}
+
+	// change stream is opened on startup, a probe link shows it delivers events
+	private void awaitStream()
+	{
+		await(() ->
+		{
+			String probe = customKey();
+			otherNode.insert(link(probe, "http://example.com/probe"));
+			pause(500);
+			return shortUrlFilter.mightExist(probe);
+		});
+	}
+
+	private Link link(String shortUrl, String longUrl)
+	{
+		Link link = new Link(shortUrl, longUrl, new Date(), new Date(System.currentTimeMillis() + 86400000), 0);
+		link.setLongUrlHash(reducer.hashUrl(longUrl));
+		return link;
+	}
+
+	private static Document pending(String nodeId, Date updated, Object... clicks)
+	{
+		Document[] entries = new Document[clicks.length / 2];
+		for (int i = 0; i < entries.length; i++)
+			entries[i] = new Document("s", clicks[i * 2]).append("c", ((Integer) clicks[i * 2 + 1]).longValue());
+		return new Document("_id", nodeId).append("Pending", Arrays.asList(entries)).append("Updated", updated);
+	}
+
+	// outside the generated key namespace, so the filter does not look it up anyway
+	private static String customKey()
+	{
+		return "it-" + UUID.randomUUID();
+	}
+
+	private static void await(BooleanSupplier condition)
+	{
+		long until = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean())
+		{
+			assertTrue("Condition not met within 10 seconds", System.currentTimeMillis() < until);
+			pause(50);
+		}
+	}
+
+	private static void pause(long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.nttdata.urlshortener.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nttdata.urlshortener.model.Link;
+
+public class LinkInsertBatcherTest
+{
+	@Test
+	public void rejectedWriteFailsQueuedInserts() throws InterruptedException
+	{
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.initialize();
+		executor.shutdown();
+		LinkInsertBatcher batcher = new LinkInsertBatcher();
+		ReflectionTestUtils.setField(batcher, "linkInsertExecutor", executor);
+		CompletableFuture<Link> future = batcher.insert(new Link("abc", "http://example.com/a", null, null, 0));
+		assertRejected(future);
+		// no writer is counted as running, the next insert tries again
+		assertFalse(((AtomicBoolean) ReflectionTestUtils.getField(batcher, "writing")).get());
+		CompletableFuture<Link> next = batcher.insert(new Link("def", "http://example.com/d", null, null, 0));
+		assertNotSame(future, next);
+		assertRejected(next);
+	}
+
+	private static void assertRejected(CompletableFuture<Link> future) throws InterruptedException
+	{
+		try
+		{
+			future.get();
+			fail("Insert completed");
+		}
+		catch (ExecutionException e)
+		{
+			assertSame(TaskRejectedException.class, e.getCause().getClass());
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.nttdata.urlshortener.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nttdata.urlshortener.model.Link;
+
+public class LinkLookupCoordinatorTest
+{
+	private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+	private final LinkLookupCoordinator coordinator = new LinkLookupCoordinator();
+
+	@After
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	@Test
+	public void rejectedQueryFailsQueuedLookups() throws InterruptedException
+	{
+		coordinator(0);
+		executor.initialize();
+		executor.shutdown();
+		CompletableFuture<Link> future = coordinator.lookup("abc");
+		assertTrue(future.isCompletedExceptionally());
+		assertRejected(future);
+		// no task is counted as running, the next lookup tries again
+		assertEquals(0, ((AtomicInteger) ReflectionTestUtils.getField(coordinator, "active")).get());
+		CompletableFuture<Link> next = coordinator.lookup("abc");
+		assertNotSame(future, next);
+		assertRejected(next);
+	}
+
+	@Test
+	public void blockingFindIsBounded() throws InterruptedException
+	{
+		coordinator(100);
+		// single query thread is busy, the lookup is not answered
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.initialize();
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() ->
+		{
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		});
+		try
+		{
+			coordinator.find("abc");
+			fail("Lookup completed");
+		}
+		catch (QueryTimeoutException e)
+		{
+			// expected
+		}
+		finally
+		{
+			release.countDown();
+		}
+	}
+
+	private void coordinator(long timeoutMs)
+	{
+		ReflectionTestUtils.setField(coordinator, "linkLookupExecutor", executor);
+		ReflectionTestUtils.setField(coordinator, "threads", 1);
+		ReflectionTestUtils.setField(coordinator, "maxBatch", 100);
+		ReflectionTestUtils.setField(coordinator, "timeoutMs", timeoutMs);
+	}
+
+	private static void assertRejected(CompletableFuture<Link> future) throws InterruptedException
+	{
+		try
+		{
+			future.get();
+			fail("Lookup completed");
+		}
+		catch (ExecutionException e)
+		{
+			assertSame(TaskRejectedException.class, e.getCause().getClass());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.nttdata.urlshortener.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nttdata.urlshortener.model.Link;
+import com.nttdata.urlshortener.repository.ReactiveLinkLookup;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class ReactiveLinkLookupCoordinatorTest
+{
+	// queries are answered when the test completes their futures
+	private final List<List<String>> batches = new ArrayList<List<String>>();
+	private final List<CompletableFuture<List<Link>>> results = new ArrayList<CompletableFuture<List<Link>>>();
+	private final ReactiveLinkLookupCoordinator coordinator = new ReactiveLinkLookupCoordinator();
+
+	@Test
+	public void queuedLookupsShareNextQuery()
+	{
+		coordinator(1);
+		Link a = new Link("a", "http://example.com/a", null, null, 0);
+		Link b = new Link("b", "http://example.com/b", null, null, 0);
+		CompletableFuture<Link> first = coordinator.lookup("a").toFuture();
+		CompletableFuture<Link> same = coordinator.lookup("a").toFuture();
+		CompletableFuture<Link> second = coordinator.lookup("b").toFuture();
+		CompletableFuture<Link> third = coordinator.lookup("c").toFuture();
+		// single query in flight, the others wait for it
+		assertEquals(1, batches.size());
+		assertEquals(Collections.singletonList("a"), batches.get(0));
+
+		results.get(0).complete(Collections.singletonList(a));
+		assertSame(a, first.join());
+		assertSame(a, same.join());
+		assertEquals(Arrays.asList("b", "c"), batches.get(1));
+
+		results.get(1).complete(Collections.singletonList(b));
+		assertSame(b, second.join());
+		assertNull(third.join());
+		assertEquals(2, batches.size());
+	}
+
+	@Test
+	public void failedQueryFailsItsLookupsOnly()
+	{
+		coordinator(1);
+		CompletableFuture<Link> failed = coordinator.lookup("a").toFuture();
+		CompletableFuture<Link> next = coordinator.lookup("b").toFuture();
+		results.get(0).completeExceptionally(new IllegalStateException("down"));
+		assertTrue(failed.isCompletedExceptionally());
+		assertFalse(next.isDone());
+
+		results.get(1).complete(Collections.<Link>emptyList());
+		assertNull(next.join());
+		// a later lookup of the failed short URL queries again
+		coordinator.lookup("a").toFuture();
+		assertEquals(3, batches.size());
+	}
+
+	private void coordinator(int queries)
+	{
+		ReactiveLinkLookup lookup = new ReactiveLinkLookup()
+		{
+			@Override
+			public Flux<Link> findByShortUrlIn(Collection<String> shortUrls)
+			{
+				batches.add(new ArrayList<String>(shortUrls));
+				CompletableFuture<List<Link>> result = new CompletableFuture<List<Link>>();
+				results.add(result);
+				return Mono.fromFuture(result).flatMapIterable(links -> links);
+			}
+		};
+		ReflectionTestUtils.setField(coordinator, "lookup", lookup);
+		ReflectionTestUtils.setField(coordinator, "queries", queries);
+		ReflectionTestUtils.setField(coordinator, "maxBatch", 100);
+		ReflectionTestUtils.setField(coordinator, "lean", true);
+	}
+}
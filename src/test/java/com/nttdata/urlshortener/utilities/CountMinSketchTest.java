@@ -0,0 +1,75 @@
+package com.nttdata.urlshortener.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CountMinSketchTest
+{
+	@Test
+	public void neverUndercounts()
+	{
+		// far more elements than counters, estimates collide a lot
+		CountMinSketch sketch = new CountMinSketch(64, 4);
+		Random random = new Random(7);
+		long[] counts = new long[5000];
+		long total = 0;
+		for (int i = 0; i < 100000; i++)
+		{
+			// skewed, low elements are clicked most
+			int element = (int) (counts.length * Math.pow(random.nextDouble(), 3));
+			counts[element]++;
+			total++;
+			assertTrue(sketch.add(hash(element)) >= counts[element]);
+		}
+		int overBound = 0;
+		for (int element = 0; element < counts.length; element++)
+		{
+			long estimate = sketch.estimate(hash(element));
+			assertTrue(estimate >= counts[element]);
+			if (estimate - counts[element] > 2.72 * total / 64)
+				overBound++;
+		}
+		// bound holds with probability 1 - 0.37^4, about 98 %
+		assertTrue(overBound < counts.length * 0.05);
+	}
+
+	@Test
+	public void fewElementsAreCountedExactly()
+	{
+		CountMinSketch sketch = new CountMinSketch(1 << 16, 4);
+		for (int element = 0; element < 10; element++)
+			for (int i = 0; i <= element; i++)
+				assertEquals(i + 1, sketch.add(hash(element)));
+		for (int element = 0; element < 10; element++)
+			assertEquals(element + 1, sketch.estimate(hash(element)));
+		assertEquals(0, sketch.estimate(hash(10)));
+	}
+
+	@Test
+	public void concurrentAdditionsAreNotLost() throws InterruptedException
+	{
+		CountMinSketch sketch = new CountMinSketch(1024, 4);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread(() ->
+			{
+				for (int i = 0; i < 50000; i++)
+					sketch.add(hash(1));
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue(sketch.estimate(hash(1)) >= 200000);
+	}
+
+	private static long hash(int element)
+	{
+		return Hashing.hash64("element" + element);
+	}
+}
@@ -0,0 +1,54 @@
+package com.nttdata.urlshortener.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OffHeapLinkTableTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private OffHeapLinkTable table;
+
+	@Before
+	public void build() throws IOException
+	{
+		File directory = folder.newFolder();
+		OffHeapLinkTable.Builder builder = OffHeapLinkTable.builder(directory, 2);
+		builder.add("abc", "http://example.com/a b", OffHeapLinkTable.NEVER);
+		builder.add("caf", "http://example.com/café", 1000);
+		table = builder.build();
+	}
+
+	@After
+	public void delete() throws IOException
+	{
+		table.delete();
+	}
+
+	@Test
+	public void storesEncodedLocation()
+	{
+		long ref = table.find("abc");
+		assertNotEquals(OffHeapLinkTable.NOT_FOUND, ref);
+		assertEquals(UrlReducer.toLocation("http://example.com/a b"), table.location(ref));
+		assertEquals(OffHeapLinkTable.NEVER, table.expiration(ref));
+	}
+
+	@Test
+	public void encodesNonAscii()
+	{
+		long ref = table.find("caf");
+		assertEquals("http://example.com/caf%C3%A9", table.location(ref));
+		assertEquals(1000, table.expiration(ref));
+		assertEquals(OffHeapLinkTable.NOT_FOUND, table.find("xyz"));
+	}
+}
@@ -0,0 +1,81 @@
+package com.nttdata.urlshortener.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest
+{
+	@Test
+	public void burstIsAdmittedAtOnce()
+	{
+		// 1 per second, next token is a second away
+		RateLimiter limiter = new RateLimiter(1, 5, 1);
+		for (int i = 0; i < 5; i++)
+			assertEquals(0, limiter.acquire("client"));
+		long wait = limiter.acquire("client");
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1));
+		// rejected requests take no token
+		assertTrue(limiter.acquire("client") <= wait);
+	}
+
+	@Test
+	public void steadyRateIsAdmittedAfterBurst() throws InterruptedException
+	{
+		// 50 per second, no burst
+		RateLimiter limiter = new RateLimiter(50, 1, 1);
+		long start = System.nanoTime();
+		int admitted = 0;
+		while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500))
+		{
+			if (limiter.acquire("client") == 0)
+				admitted++;
+			Thread.sleep(1);
+		}
+		// one at start and one every 20 ms, never more; a stalled loop misses some
+		assertTrue("Admitted " + admitted, admitted >= 15 && admitted <= 26);
+	}
+
+	@Test
+	public void waitEndsWhenNextTokenIsDue() throws InterruptedException
+	{
+		RateLimiter limiter = new RateLimiter(20, 1, 1);
+		assertEquals(0, limiter.acquire("client"));
+		long wait = limiter.acquire("client");
+		assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(50));
+		TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(2));
+		assertEquals(0, limiter.acquire("client"));
+	}
+
+	@Test
+	public void clientsOnOtherStripesHaveOwnBudget()
+	{
+		RateLimiter limiter = new RateLimiter(1, 1, 2);
+		assertEquals(0, limiter.acquire(0));
+		assertTrue(limiter.acquire(0) > 0);
+		assertEquals(0, limiter.acquire(1));
+		// same stripe, shared budget
+		assertTrue(limiter.acquire(2) > 0);
+	}
+
+	@Test
+	public void releasedTokenIsAdmittedAgain()
+	{
+		RateLimiter limiter = new RateLimiter(1, 2, 1);
+		assertEquals(0, limiter.acquire(7));
+		assertEquals(0, limiter.acquire(7));
+		assertTrue(limiter.acquire(7) > 0);
+		limiter.release(7);
+		assertEquals(0, limiter.acquire(7));
+		assertTrue(limiter.acquire(7) > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroBurstIsRejected()
+	{
+		new RateLimiter(1, 0, 1);
+	}
+}
@@ -0,0 +1,102 @@
+package com.nttdata.urlshortener.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimingWheelTest
+{
+	// 2 levels of 64 slots cover 4096 ticks, later deadlines wait in overflow
+	private final TimingWheel<String> wheel = new TimingWheel<String>(1, 2, 0);
+	private final List<String> fired = new ArrayList<String>();
+
+	@Test
+	public void firesAtDeadlineOnLevelZero()
+	{
+		wheel.schedule("a", 10);
+		advanceTo(9);
+		assertTrue(fired.isEmpty());
+		advanceTo(10);
+		assertEquals(1, fired.size());
+		advanceTo(100);
+		assertEquals(1, fired.size());
+	}
+
+	@Test
+	public void cascadesFromUpperLevel()
+	{
+		// 3 slots of level 1 away, moves to level 0 at tick 192
+		wheel.schedule("a", 64 * 3 + 5);
+		advanceTo(64 * 3 + 4);
+		assertTrue(fired.isEmpty());
+		advanceTo(64 * 3 + 5);
+		assertEquals(1, fired.size());
+	}
+
+	@Test
+	public void overflowIsPlacedAfterFullRounds()
+	{
+		// beyond 4096 ticks, placed again when the top level wraps around
+		wheel.schedule("a", 3 * 4096 + 77);
+		advanceTo(3 * 4096 + 76);
+		assertTrue(fired.isEmpty());
+		advanceTo(3 * 4096 + 77);
+		assertEquals(1, fired.size());
+	}
+
+	@Test
+	public void pastDeadlineFiresOnNextAdvance()
+	{
+		advanceTo(1000);
+		wheel.schedule("a", 500);
+		advanceTo(1000);
+		assertEquals(1, fired.size());
+	}
+
+	@Test
+	public void deadlineIsRoundedUpToTick()
+	{
+		TimingWheel<String> coarse = new TimingWheel<String>(100, 2, 0);
+		coarse.schedule("a", 250);
+		coarse.advance(299, fired::add);
+		assertTrue(fired.isEmpty());
+		coarse.advance(300, fired::add);
+		assertEquals(1, fired.size());
+	}
+
+	@Test
+	public void everyItemFiresExactlyAtItsTick()
+	{
+		Random random = new Random(42);
+		Map<String, Long> deadlines = new HashMap<String, Long>();
+		for (int i = 0; i < 5000; i++)
+		{
+			long deadline = 1 + random.nextInt(3 * 4096);
+			deadlines.put("item" + i, deadline);
+			wheel.schedule("item" + i, deadline);
+		}
+		for (long tick = 1; tick <= 3 * 4096; tick++)
+		{
+			final long now = tick;
+			wheel.advance(now, item ->
+			{
+				assertEquals(item, deadlines.remove(item).longValue(), now);
+				fired.add(item);
+			});
+		}
+		assertEquals(5000, fired.size());
+		assertTrue(deadlines.isEmpty());
+	}
+
+	private void advanceTo(long tick)
+	{
+		wheel.advance(tick, fired::add);
+	}
+}
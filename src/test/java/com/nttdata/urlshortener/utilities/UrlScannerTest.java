@@ -0,0 +1,109 @@
+package com.nttdata.urlshortener.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class UrlScannerTest
+{
+	private final UrlScanner scanner = UrlScanner.forThread();
+
+	@Test
+	public void schemeIsDropped()
+	{
+		assertEquals("example.com/a", canonical("http://example.com/a"));
+		assertEquals("example.com/a", canonical("https://example.com/a"));
+		assertEquals("example.com/a", canonical("HTTPS://example.com/a"));
+	}
+
+	@Test
+	public void hostIsLowerCasedPathIsNot()
+	{
+		assertEquals("example.com/Path", canonical("http://Example.COM/Path"));
+		assertEquals("user:Pw@example.com", canonical("http://user:Pw@EXAMPLE.com"));
+		assertEquals("[::1]", canonical("http://[::1]/"));
+	}
+
+	@Test
+	public void defaultPortIsDropped()
+	{
+		assertEquals("example.com/x", canonical("http://example.com:80/x"));
+		assertEquals("example.com/x", canonical("https://example.com:443/x"));
+		assertEquals("example.com:443/x", canonical("http://example.com:443/x"));
+		assertEquals("example.com:8080/x", canonical("http://example.com:8080/x"));
+		assertEquals("example.com/x", canonical("http://example.com:/x"));
+	}
+
+	@Test
+	public void percentEncodingIsNormalized()
+	{
+		// unreserved characters decoded, others upper case hex
+		assertEquals("example.com/~user/%2F%E4", canonical("http://example.com/%7euser/%2f%e4"));
+		assertEquals("example.com/a", canonical("http://example.co%4D/a"));
+		// non ASCII characters encoded as UTF-8
+		assertEquals("example.com/%C3%BC%E2%82%AC%F0%9F%98%80", canonical("http://example.com/\u00fc\u20ac\ud83d\ude00"));
+		assertEquals(canonical("http://example.com/%C3%BC"), canonical("http://example.com/\u00fc"));
+	}
+
+	@Test
+	public void trailingSlashOfPathIsRemoved()
+	{
+		assertEquals("example.com", canonical("http://example.com/"));
+		assertEquals("example.com/a", canonical("http://example.com/a/"));
+		assertEquals("example.com/a/", canonical("http://example.com/a//"));
+		assertEquals("example.com/a/?q=1", canonical("http://example.com/a/?q=1"));
+	}
+
+	@Test
+	public void trailingSlashOfQueryOrFragmentIsKept()
+	{
+		assertEquals("example.com/a?q=b/", canonical("http://example.com/a?q=b/"));
+		assertEquals("example.com/a#b/", canonical("http://example.com/a#b/"));
+		assertEquals("example.com/?", canonical("http://example.com/?"));
+	}
+
+	@Test
+	public void surroundingWhiteSpaceIsIgnored()
+	{
+		assertEquals("example.com/a", canonical("  http://example.com/a \t"));
+	}
+
+	@Test
+	public void invalidUrlsAreRejected()
+	{
+		assertFalse(scanner.scan(null));
+		assertFalse(scanner.scan(""));
+		assertFalse(scanner.scan("example.com"));
+		assertFalse(scanner.scan("ftp://example.com"));
+		assertFalse(scanner.scan("http:/example.com"));
+		assertFalse(scanner.scan("http://"));
+		assertFalse(scanner.scan("http:///a"));
+		assertFalse(scanner.scan("http://exa mple.com"));
+		assertFalse(scanner.scan("http://example.com/a b"));
+		assertFalse(scanner.scan("http://example.com/%zz"));
+		assertFalse(scanner.scan("http://example.com/%4"));
+		assertFalse(scanner.scan("http://example.com:99999/"));
+		assertFalse(scanner.scan("http://example.com:8o/"));
+		assertFalse(scanner.scan("http://example.com/#a#b"));
+		assertFalse(scanner.scan("http://[::g]/"));
+		assertFalse(scanner.scan("http://example.com/\ud800"));
+	}
+
+	@Test
+	public void canonicalFormIsExposedAsCharSequence()
+	{
+		assertTrue(scanner.scan("http://Example.com/A/"));
+		assertEquals(13, scanner.length());
+		assertEquals('A', scanner.charAt(12));
+		assertEquals("example", scanner.subSequence(0, 7));
+		assertEquals(Hashing.hash64("example.com/A"), Hashing.hash64(scanner));
+	}
+
+	private String canonical(String url)
+	{
+		assertTrue(url, scanner.scan(url));
+		return scanner.toString();
+	}
+}